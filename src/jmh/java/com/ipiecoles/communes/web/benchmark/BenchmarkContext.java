@@ -0,0 +1,85 @@
+package com.ipiecoles.communes.web.benchmark;
+
+import com.ipiecoles.communes.web.WebApplication;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.service.CommuneNeighborGraph;
+import com.ipiecoles.communes.web.service.CommuneSearchIndex;
+import com.ipiecoles.communes.web.service.CommuneSpatialIndex;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Application démarrée une seule fois par fork JMH, sur une base H2 en mémoire (profil "benchmark")
+ * chargée avec le jeu de communes de {@link CommuneDataset} et un utilisateur {@link #USERNAME}.
+ */
+public final class BenchmarkContext {
+
+    public static final String USERNAME = "benchmark";
+
+    public static final String PASSWORD = "benchmark-password";
+
+    private static ConfigurableApplicationContext context;
+
+    private static List<Commune> communes;
+
+    private BenchmarkContext() {
+    }
+
+    public static synchronized ConfigurableApplicationContext get() {
+        return get(new String[0]);
+    }
+
+    /**
+     * @param proprietes Propriétés "nom=valeur" ajoutées au profil, prises en compte au premier appel du fork
+     */
+    public static synchronized ConfigurableApplicationContext get(String... proprietes) {
+        if (context == null) {
+            context = new SpringApplicationBuilder(WebApplication.class)
+                    .profiles("benchmark")
+                    .properties(proprietes)
+                    .run();
+            communes = CommuneDataset.load();
+            charger(context, communes);
+        }
+        return context;
+    }
+
+    /**
+     * Arrête l'application, sans quoi les threads de Tomcat empêchent le fork JMH de se terminer
+     */
+    public static synchronized void close() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    public static List<Commune> communes() {
+        get();
+        return communes;
+    }
+
+    private static void charger(ConfigurableApplicationContext context, List<Commune> communes) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.batchUpdate("insert into commune (code_insee, nom, code_postal, latitude, longitude) values (?, ?, ?, ?, ?)",
+                communes.stream()
+                        .map(c -> new Object[]{c.getCodeInsee(), c.getNom(), c.getCodePostal(), c.getLatitude(), c.getLongitude()})
+                        .collect(Collectors.toList()));
+
+        jdbcTemplate.update("insert into role (id, role) values (1, 'ROLE_USER'), (2, 'ROLE_ADMIN')");
+        String password = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        jdbcTemplate.update("insert into user (id, user_name, email, password, name, last_name, active) values (1, ?, 'benchmark@ipiecoles.com', ?, 'Bench', 'Mark', true)",
+                USERNAME, password);
+        jdbcTemplate.update("insert into user_role (user_id, role_id) values (1, 1), (1, 2)");
+
+        //Les index en mémoire ont été chargés au démarrage, sur une base vide
+        context.getBean(CommuneSpatialIndex.class).init();
+        context.getBean(CommuneSearchIndex.class).init();
+        context.getBean(CommuneNeighborGraph.class).rebuild();
+    }
+}
@@ -0,0 +1,80 @@
+package com.ipiecoles.communes.web.benchmark;
+
+import com.ipiecoles.communes.web.model.Commune;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Jeu de communes des benchmarks. Par défaut, 35 000 communes sont générées de manière déterministe
+ * sur l'emprise de la France métropolitaine. Le fichier indiqué par la propriété système
+ * {@code communes.dataset} (CSV codeInsee;nom;codePostal;latitude;longitude, avec en-tête) est utilisé à la place
+ * s'il est renseigné.
+ */
+public final class CommuneDataset {
+
+    public static final int NB_COMMUNES = 35_000;
+
+    private static final String[] SYLLABES = {"mont", "ville", "bourg", "sur", "saint", "la", "le", "val", "bois", "champ",
+            "fleury", "roche", "pont", "neuf", "chateau", "marais", "vigne", "lac", "pre", "haut"};
+
+    private CommuneDataset() {
+    }
+
+    public static List<Commune> load() {
+        String fichier = System.getProperty("communes.dataset");
+        return fichier == null || fichier.isEmpty() ? generate(NB_COMMUNES) : read(fichier);
+    }
+
+    /**
+     * @return La commune la plus proche du centre du jeu de données
+     */
+    public static Commune reference(List<Commune> communes) {
+        return communes.stream()
+                .min(Comparator.comparingDouble(c -> Math.abs(c.getLatitude() - 46.5) + Math.abs(c.getLongitude() - 2.5)))
+                .orElseThrow();
+    }
+
+    public static List<Commune> generate(int nbCommunes) {
+        Random random = new Random(42);
+        List<Commune> communes = new ArrayList<>(nbCommunes);
+        for (int i = 0; i < nbCommunes; i++) {
+            int departement = 1 + i % 95;
+            int numero = 1 + i / 95;
+            String codeInsee = String.format("%02d%03d", departement, numero);
+            String codePostal = String.format("%02d%03d", departement, (numero * 10) % 1000);
+            StringBuilder nom = new StringBuilder();
+            for (int s = 0; s < 2 + random.nextInt(2); s++) {
+                String syllabe = SYLLABES[random.nextInt(SYLLABES.length)];
+                nom.append(s == 0 ? Character.toUpperCase(syllabe.charAt(0)) + syllabe.substring(1) : "-" + syllabe);
+            }
+            double latitude = 42.3 + random.nextDouble() * 8.8;
+            double longitude = -4.8 + random.nextDouble() * 13;
+            communes.add(new Commune(codeInsee, nom.toString(), codePostal, latitude, longitude));
+        }
+        return communes;
+    }
+
+    private static List<Commune> read(String fichier) {
+        List<Commune> communes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(fichier), StandardCharsets.UTF_8)) {
+            String ligne = reader.readLine();
+            while ((ligne = reader.readLine()) != null) {
+                String[] colonnes = ligne.split(";");
+                communes.add(new Commune(colonnes[0], colonnes[1], colonnes[2],
+                        Double.valueOf(colonnes[3]), Double.valueOf(colonnes[4])));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return communes;
+    }
+}
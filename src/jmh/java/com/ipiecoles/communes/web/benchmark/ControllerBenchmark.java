@@ -0,0 +1,139 @@
+package com.ipiecoles.communes.web.benchmark;
+
+import com.ipiecoles.communes.web.controller.CommuneApiController;
+import com.ipiecoles.communes.web.controller.CommuneController;
+import com.ipiecoles.communes.web.controller.IndexController;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneSuggestion;
+import com.ipiecoles.communes.web.repository.CommuneCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.ui.ModelMap;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Méthodes des contrôleurs appelées directement, sans le rendu Thymeleaf (voir {@link RenderingBenchmark})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerBenchmark {
+
+    @Param({"5", "10", "20"})
+    private int perimetre;
+
+    private IndexController indexController;
+
+    private CommuneController communeController;
+
+    private CommuneApiController communeApiController;
+
+    private Commune reference;
+
+    private int dernierePage;
+
+    private String curseurDernierePage;
+
+    @Setup
+    public void setUp() {
+        ConfigurableApplicationContext context = BenchmarkContext.get();
+        indexController = context.getBean(IndexController.class);
+        communeController = context.getBean(CommuneController.class);
+        communeApiController = context.getBean(CommuneApiController.class);
+        reference = CommuneDataset.reference(BenchmarkContext.communes());
+        dernierePage = BenchmarkContext.communes().size() / 10 - 1;
+        Commune derniereCommuneAvantPage = BenchmarkContext.communes().stream()
+                .sorted(Comparator.comparing(Commune::getNom).thenComparing(Commune::getCodeInsee).reversed())
+                .skip(dernierePage * 10L - 1)
+                .findFirst()
+                .orElseThrow();
+        curseurDernierePage = CommuneCursor.of(derniereCommuneAvantPage, "nom").toString();
+
+        //getCommune est protégée par @PreAuthorize
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                BenchmarkContext.USERNAME, null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkContext.close();
+    }
+
+    @Benchmark
+    public ModelMap listeCommunesPremierePage() {
+        ModelMap model = new ModelMap();
+        indexController.listeCommunes(0, 10, "codeInsee", "ASC", "", null, null, null, null, model, new MockHttpServletRequest(), new MockHttpServletResponse());
+        return model;
+    }
+
+    @Benchmark
+    public ModelMap listeCommunesDernierePage() {
+        ModelMap model = new ModelMap();
+        indexController.listeCommunes(dernierePage, 10, "nom", "DESC", "", null, null, null, null, model, new MockHttpServletRequest(), new MockHttpServletResponse());
+        return model;
+    }
+
+    @Benchmark
+    public ModelMap listeCommunesDernierePageKeyset() {
+        ModelMap model = new ModelMap();
+        indexController.listeCommunes(0, 10, "nom", "DESC", "", true, curseurDernierePage, null, null, model, new MockHttpServletRequest(), new MockHttpServletResponse());
+        return model;
+    }
+
+    @Benchmark
+    public ModelMap listeCommunesRecherche() {
+        ModelMap model = new ModelMap();
+        indexController.listeCommunes(0, 10, "codeInsee", "ASC", "mont", null, null, null, null, model, new MockHttpServletRequest(), new MockHttpServletResponse());
+        return model;
+    }
+
+    @Benchmark
+    public ResponseEntity<List<CommuneSuggestion>> suggestNom() {
+        return communeApiController.suggest("mo", 10);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<CommuneSuggestion>> suggestCode() {
+        return communeApiController.suggest("75", 10);
+    }
+
+    @Benchmark
+    public ModelMap getCommune() {
+        ModelMap model = new ModelMap();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        //CommuneQueries est propre à chaque requête
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            communeController.getCommune(reference.getCodeInsee(), perimetre, model, request, new MockHttpServletResponse());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        return model;
+    }
+}
@@ -0,0 +1,103 @@
+package com.ipiecoles.communes.web.benchmark;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneProche;
+import com.ipiecoles.communes.web.service.CommuneSpatialIndex;
+import com.ipiecoles.communes.web.util.GeoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compare l'ancien calcul des communes proches (distance boxée recalculée dans le comparateur)
+ * avec le noyau sur doubles primitifs de {@link GeoUtils} utilisé par {@link CommuneSpatialIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistanceBenchmark {
+
+    @Param({"5", "10", "20"})
+    private int perimetre;
+
+    private Commune reference;
+
+    private List<Commune> communesDuCarre;
+
+    private CommuneSpatialIndex index;
+
+    @Setup
+    public void setUp() {
+        List<Commune> communes = CommuneDataset.load();
+        reference = CommuneDataset.reference(communes);
+        index = new CommuneSpatialIndex();
+        index.load(communes);
+
+        //Ce que renvoyait findByLatitudeBetweenAndLongitudeBetween pour ce périmètre
+        double degreLat = perimetre / 111d;
+        double degreLong = perimetre / 77d;
+        communesDuCarre = communes.stream()
+                .filter(c -> Math.abs(c.getLatitude() - reference.getLatitude()) <= degreLat
+                        && Math.abs(c.getLongitude() - reference.getLongitude()) <= degreLong)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public long distanceBoxee() {
+        return legacyGetDistance(communesDuCarre.get(0), reference.getLatitude(), reference.getLongitude());
+    }
+
+    @Benchmark
+    public double distancePrimitive() {
+        Commune commune = communesDuCarre.get(0);
+        return GeoUtils.distanceKm(reference.getLatitude(), reference.getLongitude(), commune.getLatitude(), commune.getLongitude());
+    }
+
+    @Benchmark
+    public List<Commune> triComparateurBoxe() {
+        return communesDuCarre.stream().
+                filter(commune1 -> !commune1.getNom().equals(reference.getNom()) && legacyGetDistance(commune1, reference.getLatitude(), reference.getLongitude()) <= perimetre).
+                sorted(Comparator.comparing(o -> legacyGetDistance(o, reference.getLatitude(), reference.getLongitude()))).
+                collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<CommuneProche> indexSpatial() {
+        return index.findCommunesProches(reference, perimetre);
+    }
+
+    /**
+     * Copie de l'ancienne implémentation de Commune.getDistance
+     */
+    private static Long legacyGetDistance(Commune commune, Double latitude, Double longitude) {
+        Double lat1 = Math.toRadians(latitude);
+        Double lng1 = Math.toRadians(longitude);
+        Double lat2 = Math.toRadians(commune.getLatitude());
+        Double lng2 = Math.toRadians(commune.getLongitude());
+
+        double dlon = lng2 - lng1;
+        double dlat = lat2 - lat1;
+
+        double a = Math.pow((Math.sin(dlat / 2)), 2) + Math.cos(lat1) * Math.cos(lat2) * Math.pow(Math.sin(dlon / 2), 2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return Math.round(6371.009 * c);
+    }
+}
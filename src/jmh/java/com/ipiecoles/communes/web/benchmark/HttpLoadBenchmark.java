@@ -0,0 +1,123 @@
+package com.ipiecoles.communes.web.benchmark;
+
+import com.ipiecoles.communes.web.model.Commune;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Charge HTTP sur le Tomcat embarqué, avec les threads du pool de Tomcat (platform) ou des threads virtuels
+ * (virtual, communes.threads.virtual=true, Java 21 ou plus). Les clients, plus nombreux que les threads du pool
+ * (server.tomcat.threads.max, 200 par défaut), demandent des pages de la liste et des détails de communes au hasard.
+ * <p>
+ * Sur la base H2 en mémoire du profil benchmark, les requêtes n'attendent pas le réseau : pour mesurer le gain des
+ * threads virtuels, pointer les forks vers MySQL, par exemple
+ * {@code -Djmh.args="HttpLoadBenchmark -jvmArgsAppend -Dspring.datasource.url=jdbc:mysql://localhost:3306/bench"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(256)
+@Fork(1)
+public class HttpLoadBenchmark {
+
+    private static final Pattern CSRF = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"");
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    private HttpClient client;
+
+    private String base;
+
+    private List<Commune> communes;
+
+    private int nbPages;
+
+    @Setup
+    public void setUp() throws Exception {
+        ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) BenchmarkContext.get(
+                "communes.threads.virtual=" + "virtual".equals(mode));
+        base = "http://localhost:" + context.getWebServer().getPort();
+        communes = BenchmarkContext.communes();
+        nbPages = communes.size() / 10;
+        client = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+        connecter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkContext.close();
+    }
+
+    @Benchmark
+    public int liste() throws Exception {
+        return get("/?page=" + ThreadLocalRandom.current().nextInt(nbPages) + "&size=10&sortProperty=nom&sortDirection=ASC");
+    }
+
+    @Benchmark
+    public int detail() throws Exception {
+        return get("/communes/" + communes.get(ThreadLocalRandom.current().nextInt(communes.size())).getCodeInsee());
+    }
+
+    private int get(String chemin) throws IOException, InterruptedException {
+        HttpResponse<byte[]> reponse = client.send(HttpRequest.newBuilder(URI.create(base + chemin)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        if (reponse.statusCode() != 200) {
+            throw new IllegalStateException(chemin + " : " + reponse.statusCode());
+        }
+        return reponse.body().length;
+    }
+
+    /**
+     * Connexion par le formulaire, la session étant ensuite partagée par tous les clients
+     */
+    private void connecter() throws IOException, InterruptedException {
+        String login = client.send(HttpRequest.newBuilder(URI.create(base + "/login")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        Matcher csrf = CSRF.matcher(login);
+        if (!csrf.find()) {
+            throw new IllegalStateException("Jeton CSRF absent de la page de connexion");
+        }
+        String formulaire = "username=" + encode(BenchmarkContext.USERNAME) + "&password=" + encode(BenchmarkContext.PASSWORD)
+                + "&_csrf=" + encode(csrf.group(1));
+        HttpResponse<Void> reponse = client.send(HttpRequest.newBuilder(URI.create(base + "/login"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(formulaire)).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (!reponse.headers().firstValue("Location").orElse("").contains("successfulConnection")) {
+            throw new IllegalStateException("Connexion refusée : " + reponse.headers().firstValue("Location").orElse(""));
+        }
+    }
+
+    private static String encode(String valeur) {
+        return URLEncoder.encode(valeur, StandardCharsets.UTF_8);
+    }
+}
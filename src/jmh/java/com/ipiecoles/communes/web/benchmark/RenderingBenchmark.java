@@ -0,0 +1,89 @@
+package com.ipiecoles.communes.web.benchmark;
+
+import com.ipiecoles.communes.web.model.Commune;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Requêtes complètes (filtres de sécurité, contrôleur et rendu Thymeleaf de listeCommunes.html / detail.html)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderingBenchmark {
+
+    private MockMvc mockMvc;
+
+    private Commune reference;
+
+    private MockHttpSession session;
+
+    private String etagDetail;
+
+    @Setup
+    public void setUp() throws Exception {
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) BenchmarkContext.get())
+                .apply(springSecurity())
+                .build();
+        reference = CommuneDataset.reference(BenchmarkContext.communes());
+        //Même session, donc même jeton CSRF, pour que l'ETag de la page soit réutilisable
+        session = new MockHttpSession();
+        etagDetail = mockMvc.perform(get("/communes/" + reference.getCodeInsee()).session(session)
+                        .with(user(BenchmarkContext.USERNAME).roles("USER")))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkContext.close();
+    }
+
+    @Benchmark
+    public String listeCommunes() throws Exception {
+        return mockMvc.perform(get("/").param("size", "10"))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public String listeCommunesPageSize100() throws Exception {
+        return mockMvc.perform(get("/").param("size", "100").param("sortProperty", "nom"))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public String detail() throws Exception {
+        return mockMvc.perform(get("/communes/" + reference.getCodeInsee()).with(user(BenchmarkContext.USERNAME).roles("USER")))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public int detailNonModifie() throws Exception {
+        return mockMvc.perform(get("/communes/" + reference.getCodeInsee()).session(session)
+                        .with(user(BenchmarkContext.USERNAME).roles("USER"))
+                        .header(HttpHeaders.IF_NONE_MATCH, etagDetail))
+                .andReturn().getResponse().getStatus();
+    }
+}
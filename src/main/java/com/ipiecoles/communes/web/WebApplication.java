@@ -2,12 +2,18 @@ package com.ipiecoles.communes.web;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class WebApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(WebApplication.class, args);
+        SpringApplication application = new SpringApplication(WebApplication.class);
+        //Étapes du démarrage gardées pour le rapport de StartupConfiguration et /actuator/startup
+        application.setApplicationStartup(new BufferingApplicationStartup(10000));
+        application.run(args);
     }
 
 }
@@ -0,0 +1,115 @@
+package com.ipiecoles.communes.web.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limite le nombre de connexions ouvertes en même temps par un sémaphore équitable. Chaque connexion obtenue
+ * garde une autorisation jusqu'à sa fermeture.
+ * <p>
+ * Avec des threads virtuels, les requêtes ne sont plus limitées par la taille du pool de Tomcat : des milliers
+ * d'entre elles peuvent demander une connexion en même temps. Elles attendent ici, dans l'ordre d'arrivée,
+ * plutôt que dans le pool de connexions et le pilote JDBC, dont les blocs synchronized immobilisent le thread
+ * porteur du thread virtuel. Au-delà du délai d'attente, une SQLTransientConnectionException est levée, comme
+ * le fait Hikari.
+ */
+public class ConnectionLimitingDataSource extends DelegatingDataSource {
+
+    private final Semaphore autorisations;
+
+    private final long attenteMaxNanos;
+
+    /**
+     * @param dataSource    La source de données à limiter
+     * @param maxConnexions Le nombre maximum de connexions ouvertes en même temps
+     * @param attenteMax    L'attente maximum d'une autorisation
+     * @param meterRegistry Registre où publier communes.jdbc.permits.available et communes.jdbc.waiting
+     */
+    public ConnectionLimitingDataSource(DataSource dataSource, int maxConnexions, Duration attenteMax, MeterRegistry meterRegistry) {
+        super(dataSource);
+        this.autorisations = new Semaphore(maxConnexions, true);
+        this.attenteMaxNanos = attenteMax.toNanos();
+        Gauge.builder("communes.jdbc.permits.available", autorisations, Semaphore::availablePermits)
+                .description("Connexions pouvant encore être ouvertes").register(meterRegistry);
+        Gauge.builder("communes.jdbc.waiting", autorisations, Semaphore::getQueueLength)
+                .description("Threads en attente d'une connexion").register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquerir();
+        try {
+            return limiter(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            autorisations.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquerir();
+        try {
+            return limiter(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            autorisations.release();
+            throw e;
+        }
+    }
+
+    private void acquerir() throws SQLException {
+        try {
+            if (!autorisations.tryAcquire(attenteMaxNanos, TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException("Aucune connexion disponible après "
+                        + TimeUnit.NANOSECONDS.toMillis(attenteMaxNanos) + " ms, " + autorisations.getQueueLength() + " threads en attente");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrompu en attente d'une connexion", e);
+        }
+    }
+
+    /**
+     * @return La connexion, dont la première fermeture rend l'autorisation
+     */
+    private Connection limiter(Connection connexion) {
+        AtomicBoolean fermee = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, methode, args) -> {
+                    switch (methode.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "close":
+                            if (!fermee.compareAndSet(false, true)) {
+                                return null;
+                            }
+                            try {
+                                connexion.close();
+                            } finally {
+                                autorisations.release();
+                            }
+                            return null;
+                        default:
+                            try {
+                                return methode.invoke(connexion, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getTargetException();
+                            }
+                    }
+                });
+    }
+}
@@ -0,0 +1,86 @@
+package com.ipiecoles.communes.web.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lectures sur des réplicas, écritures sur la base principale, activé en renseignant communes.datasource.replicas
+ * (URL JDBC des réplicas, séparées par des virgules). Sans cette propriété, la source de données unique de Spring
+ * Boot est utilisée.
+ * <p>
+ * La base principale garde la configuration spring.datasource.* et spring.datasource.hikari.* ; les réplicas
+ * ont leur propre pool, dimensionné par communes.datasource.replica.pool-size. Les transactions en lecture seule
+ * (méthodes de lecture des repositories, @Transactional(readOnly = true)) vont à un réplica, voir
+ * {@link ReadWriteRoutingDataSource} et {@link ReplicaLagMonitor}.
+ */
+@Configuration
+@ConditionalOnProperty("communes.datasource.replicas")
+public class DataSourceRoutingConfiguration {
+
+    @Value("${communes.datasource.replicas}")
+    private String[] urlsReplicas;
+
+    @Value("${communes.datasource.replica.username:${spring.datasource.username:}}")
+    private String utilisateurReplicas;
+
+    @Value("${communes.datasource.replica.password:${spring.datasource.password:}}")
+    private String motDePasseReplicas;
+
+    @Value("${communes.datasource.replica.pool-size:10}")
+    private int taillePoolReplicas;
+
+    @Value("${communes.datasource.replica.max-lag:5s}")
+    private Duration retardMax;
+
+    @Value("${communes.datasource.replica.check-interval:1s}")
+    private Duration intervalleVerification;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReadWriteRoutingDataSource.PRIMAIRE);
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaLagMonitor replicaLagMonitor(HikariDataSource primaryDataSource, MeterRegistry meterRegistry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urlsReplicas.length; i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (i + 1));
+            replica.setJdbcUrl(urlsReplicas[i].trim());
+            replica.setUsername(utilisateurReplicas);
+            replica.setPassword(motDePasseReplicas);
+            replica.setMaximumPoolSize(taillePoolReplicas);
+            replica.setReadOnly(true);
+            //Métriques hikaricp.* du pool, avec le tag pool=replica-N
+            replica.setMetricRegistry(meterRegistry);
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReplicaLagMonitor(primaryDataSource, replicas, retardMax, intervalleVerification, meterRegistry);
+    }
+
+    /**
+     * Source de données utilisée par JPA, Flyway et JdbcTemplate
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaLagMonitor replicaLagMonitor, MeterRegistry meterRegistry) {
+        //La connexion n'est demandée qu'à la première requête, une fois la transaction marquée en lecture seule
+        return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(primaryDataSource, replicaLagMonitor, meterRegistry));
+    }
+}
@@ -0,0 +1,97 @@
+package com.ipiecoles.communes.web.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Cache de second niveau d'Hibernate (entités Commune et résultats de requêtes) sur Caffeine via JCache.
+ * Hibernate invalide lui-même les entrées lors des enregistrements et suppressions : une écriture sur la
+ * table commune rend obsolètes les résultats de requêtes en cache grâce à la région des timestamps.
+ */
+@Configuration
+public class HibernateCacheConfiguration {
+
+    /**
+     * Région des entités Commune, voir l'annotation @Cache de {@link com.ipiecoles.communes.web.model.Commune}
+     */
+    public static final String REGION_COMMUNE = "commune";
+
+    /**
+     * Région des résultats de requêtes sur les communes, voir les QueryHints de CommuneRepository
+     */
+    public static final String REGION_REQUETES_COMMUNE = "commune-requetes";
+
+    /**
+     * Région par défaut des résultats de requêtes, pour les requêtes sans région explicite
+     */
+    private static final String REGION_REQUETES = "default-query-results-region";
+
+    /**
+     * Région des dates de dernière modification des tables, qui ne doit ni expirer ni être limitée en taille
+     */
+    private static final String REGION_TIMESTAMPS = "default-update-timestamps-region";
+
+    @Value("${communes.cache.commune.max-size:50000}")
+    private long tailleMaxCommunes;
+
+    @Value("${communes.cache.commune.ttl:1h}")
+    private Duration ttlCommunes;
+
+    @Value("${communes.cache.requetes.max-size:2000}")
+    private long tailleMaxRequetes;
+
+    @Value("${communes.cache.requetes.ttl:10m}")
+    private Duration ttlRequetes;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        //Un gestionnaire propre à ce contexte Spring, le gestionnaire par défaut du fournisseur étant partagé par toute la JVM
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(
+                URI.create(getClass().getName() + "#" + System.identityHashCode(this)), provider.getDefaultClassLoader());
+        cacheManager.createCache(REGION_COMMUNE, configuration(tailleMaxCommunes, ttlCommunes));
+        cacheManager.createCache(REGION_REQUETES_COMMUNE, configuration(tailleMaxRequetes, ttlRequetes));
+        cacheManager.createCache(REGION_REQUETES, configuration(tailleMaxRequetes, ttlRequetes));
+        cacheManager.createCache(REGION_TIMESTAMPS, configuration(null, null));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, JCacheRegionFactory.class.getName());
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            //Les régions non déclarées ci-dessus sont créées sans limite, avec un avertissement dans les logs
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "create-warn");
+            //Statistiques publiées par l'actuator : hibernate.second.level.cache.requests, hibernate.cache.query.requests...
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> configuration(Long tailleMax, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        if (tailleMax != null) {
+            configuration.setMaximumSize(OptionalLong.of(tailleMax));
+        }
+        if (ttl != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        }
+        return configuration;
+    }
+}
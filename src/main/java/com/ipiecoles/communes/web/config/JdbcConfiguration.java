@@ -0,0 +1,27 @@
+package com.ipiecoles.communes.web.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Source de données JDBC de JPA, Flyway et JdbcTemplate. Spring Boot ne la crée plus lui-même dès qu'une
+ * ConnectionFactory R2DBC est configurée (voir CommuneReactiveRepository) : elle est déclarée ici, avec les
+ * propriétés spring.datasource.* et spring.datasource.hikari.* habituelles. Lorsque des réplicas sont configurés,
+ * c'est {@link DataSourceRoutingConfiguration} qui la fournit.
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class JdbcConfiguration {
+
+    @Bean
+    @ConditionalOnExpression("'${communes.datasource.replicas:}'.isEmpty()")
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+}
@@ -0,0 +1,70 @@
+package com.ipiecoles.communes.web.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Métriques des pages : durée des contrôleurs, du rendu des vues et nombre de requêtes SQL faites pour chaque
+ * page, voir {@link PageMetricsInterceptor}. Les requêtes répétées (N+1, à partir de
+ * communes.sql.repeated-threshold exécutions d'une même requête pour une page) et les requêtes lentes (au-delà de
+ * communes.sql.slow-threshold, voir {@link SlowStatementDataSource}) sont signalées dans les logs.
+ */
+@Configuration
+public class PageMetricsConfiguration implements WebMvcConfigurer {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @Value("${communes.sql.repeated-threshold:5}")
+    private int seuilRequetesRepetees;
+
+    @Bean
+    public static StatementCounter statementCounter() {
+        return new StatementCounter();
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer statementCounterCustomizer(StatementCounter statementCounter) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, statementCounter);
+    }
+
+    /**
+     * Enveloppe la source de données principale (bean dataSource) dans un {@link SlowStatementDataSource}
+     */
+    @Bean
+    public static BeanPostProcessor slowStatementPostProcessor(Environment environment, ObjectProvider<StatementCounter> statementCounter,
+                                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        Duration seuil = environment.getProperty("communes.sql.slow-threshold", Duration.class, Duration.ofMillis(500));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if ("dataSource".equals(beanName) && bean instanceof DataSource) {
+                    return new SlowStatementDataSource((DataSource) bean, seuil, statementCounter.getObject(), meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new PageMetricsInterceptor(statementCounter, meterRegistry, seuilRequetesRepetees));
+    }
+}
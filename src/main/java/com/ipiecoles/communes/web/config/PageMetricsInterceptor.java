@@ -0,0 +1,151 @@
+package com.ipiecoles.communes.web.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Découpe le temps d'une page entre la méthode du contrôleur et le rendu de la vue, que http.server.requests
+ * mesure ensemble :
+ * <ul>
+ *     <li>communes.controller : de l'appel de la méthode jusqu'au renvoi du nom de la vue, tags handler
+ *     (IndexController.listeCommunes par exemple) et exception</li>
+ *     <li>communes.view.render : rendu du template, tag view (main, detail, login...). Les redirections ne sont pas
+ *     mesurées</li>
+ *     <li>communes.page.db.statements : requêtes SQL envoyées par Hibernate pour la page, rendu compris, tag uri
+ *     (le motif de l'URL, /communes/{codeInsee} par exemple)</li>
+ *     <li>communes.db.repeated.statements : pages où une même requête SQL a été exécutée au moins seuil fois,
+ *     signe d'un N+1, tag handler. Chaque requête répétée est aussi signalée dans les logs</li>
+ * </ul>
+ * Tous les tags sont à faible cardinalité : noms de méthodes, de vues et motifs d'URL, jamais les valeurs.
+ */
+public class PageMetricsInterceptor implements HandlerInterceptor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageMetricsInterceptor.class);
+
+    private static final String DEBUT_HANDLER = PageMetricsInterceptor.class.getName() + ".debutHandler";
+
+    private static final String DEBUT_RENDU = PageMetricsInterceptor.class.getName() + ".debutRendu";
+
+    private static final String VUE = PageMetricsInterceptor.class.getName() + ".vue";
+
+    private final StatementCounter statementCounter;
+
+    private final MeterRegistry meterRegistry;
+
+    private final int seuilRequetesRepetees;
+
+    /**
+     * @param seuilRequetesRepetees Le nombre d'exécutions d'une même requête SQL à partir duquel une page est
+     *                              signalée
+     */
+    public PageMetricsInterceptor(StatementCounter statementCounter, MeterRegistry meterRegistry, int seuilRequetesRepetees) {
+        this.statementCounter = statementCounter;
+        this.meterRegistry = meterRegistry;
+        this.seuilRequetesRepetees = seuilRequetesRepetees;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        statementCounter.reinitialiser(handler instanceof HandlerMethod ? nom((HandlerMethod) handler) : null);
+        //Pour les méthodes asynchrones (API réactive), la mesure part de la première requête, pas de la reprise
+        if (handler instanceof HandlerMethod && request.getDispatcherType() == DispatcherType.REQUEST) {
+            request.setAttribute(DEBUT_HANDLER, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        if (!(handler instanceof HandlerMethod)) {
+            return;
+        }
+        enregistrerHandler(request, (HandlerMethod) handler, "none");
+        String vue = modelAndView == null ? null : modelAndView.getViewName();
+        if (vue != null && !vue.startsWith("redirect:") && !vue.startsWith("forward:")) {
+            request.setAttribute(VUE, vue);
+            request.setAttribute(DEBUT_RENDU, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        try {
+            //Les ressources statiques ne font pas de requêtes
+            if (!(handler instanceof HandlerMethod)) {
+                return;
+            }
+            //postHandle n'est pas appelé lorsque la méthode lève une exception
+            Object exception = ex != null ? ex : request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE);
+            enregistrerHandler(request, (HandlerMethod) handler,
+                    exception == null ? "none" : exception.getClass().getSimpleName());
+
+            Long debutRendu = (Long) request.getAttribute(DEBUT_RENDU);
+            if (debutRendu != null) {
+                request.removeAttribute(DEBUT_RENDU);
+                Timer.builder("communes.view.render")
+                        .tag("view", (String) request.getAttribute(VUE))
+                        .description("Rendu des templates Thymeleaf")
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - debutRendu, TimeUnit.NANOSECONDS);
+            }
+
+            Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder("communes.page.db.statements")
+                    .tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+                    .description("Requêtes SQL envoyées par Hibernate pour une page")
+                    .register(meterRegistry)
+                    .record(statementCounter.getNbRequetes());
+
+            Map<String, Integer> repetees = statementCounter.getRequetesRepetees(seuilRequetesRepetees);
+            if (!repetees.isEmpty()) {
+                String nom = nom((HandlerMethod) handler);
+                repetees.forEach((sql, nb) -> LOGGER.warn("Requête SQL répétée {} fois dans {}, N+1 probable : {}", nb, nom, sql));
+                meterRegistry.counter("communes.db.repeated.statements", "handler", nom).increment();
+            }
+        } finally {
+            //Le thread sert ensuite à d'autres traitements (filtres de sécurité, pages d'erreur, autres requêtes)
+            //qui ne passent pas par preHandle : leurs requêtes SQL ne doivent pas être attribuées à cette méthode
+            statementCounter.reinitialiser();
+        }
+    }
+
+    /**
+     * Enregistre la durée de la méthode du contrôleur, une seule fois par requête
+     */
+    private void enregistrerHandler(HttpServletRequest request, HandlerMethod handler, String exception) {
+        Long debut = (Long) request.getAttribute(DEBUT_HANDLER);
+        if (debut == null) {
+            return;
+        }
+        request.removeAttribute(DEBUT_HANDLER);
+        Timer.builder("communes.controller")
+                .tag("handler", nom(handler))
+                .tag("exception", exception)
+                .description("Durée des méthodes des contrôleurs, sans le rendu de la vue")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - debut, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return Le nom court de la méthode, IndexController.listeCommunes par exemple
+     */
+    private static String nom(HandlerMethod handler) {
+        return handler.getBeanType().getSimpleName() + "." + handler.getMethod().getName();
+    }
+}
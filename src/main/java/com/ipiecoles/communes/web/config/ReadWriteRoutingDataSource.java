@@ -0,0 +1,68 @@
+package com.ipiecoles.communes.web.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Envoie les connexions des transactions en lecture seule à un réplica à jour, et toutes les autres à la base
+ * principale. Le caractère lecture seule n'étant connu qu'une fois la transaction commencée, cette source doit
+ * être enveloppée dans un LazyConnectionDataSourceProxy.
+ * <p>
+ * Chaque connexion obtenue est comptée dans communes.datasource.route, avec le tag route (primary ou nom du
+ * réplica) et le tag reason : write, read, ou fallback lorsqu'une lecture revient à la base principale faute de
+ * réplica à jour.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMAIRE = "primary";
+
+    private final ReplicaLagMonitor replicaLagMonitor;
+
+    private final Counter ecritures;
+
+    private final Counter replis;
+
+    private final Map<String, Counter> lectures = new HashMap<>();
+
+    public ReadWriteRoutingDataSource(DataSource primaire, ReplicaLagMonitor replicaLagMonitor, MeterRegistry meterRegistry) {
+        this.replicaLagMonitor = replicaLagMonitor;
+        Map<Object, Object> cibles = new HashMap<>();
+        cibles.put(PRIMAIRE, primaire);
+        for (ReplicaLagMonitor.Replica replica : replicaLagMonitor.getReplicas()) {
+            cibles.put(replica.getNom(), replica.getDataSource());
+            lectures.put(replica.getNom(), compteur(meterRegistry, replica.getNom(), "read"));
+        }
+        setTargetDataSources(cibles);
+        setDefaultTargetDataSource(primaire);
+        afterPropertiesSet();
+        this.ecritures = compteur(meterRegistry, PRIMAIRE, "write");
+        this.replis = compteur(meterRegistry, PRIMAIRE, "fallback");
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            ecritures.increment();
+            return PRIMAIRE;
+        }
+        ReplicaLagMonitor.Replica replica = replicaLagMonitor.choisirReplica();
+        if (replica == null) {
+            replis.increment();
+            return PRIMAIRE;
+        }
+        lectures.get(replica.getNom()).increment();
+        return replica.getNom();
+    }
+
+    private static Counter compteur(MeterRegistry meterRegistry, String route, String raison) {
+        return Counter.builder("communes.datasource.route").tag("route", route).tag("reason", raison)
+                .description("Connexions obtenues par destination").register(meterRegistry);
+    }
+}
@@ -0,0 +1,182 @@
+package com.ipiecoles.communes.web.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retard des réplicas sur la base principale. À chaque vérification, le battement de la table
+ * replication_heartbeat est relu sur chaque réplica, puis l'heure courante y est écrite sur la base principale.
+ * Un réplica qui a reçu le dernier battement écrit n'a pas de retard ; sinon son retard est l'âge du battement
+ * qu'il renvoie. La mesure a donc la précision de l'intervalle entre deux vérifications.
+ * <p>
+ * Seuls les réplicas dont le retard ne dépasse pas le maximum configuré reçoivent des lectures, à tour de rôle.
+ * Un réplica injoignable est écarté jusqu'à la vérification suivante. Les vérifications commencent une fois
+ * l'application démarrée, la table ayant alors été créée par les migrations : jusque-là, tout passe par la base
+ * principale.
+ */
+public class ReplicaLagMonitor implements ApplicationListener<ApplicationReadyEvent>, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private static final String LIRE_BATTEMENT = "select beat_millis from replication_heartbeat where id = 1";
+
+    private static final String ECRIRE_BATTEMENT = "update replication_heartbeat set beat_millis = ? where id = 1";
+
+    /**
+     * Un réplica et son dernier retard mesuré
+     */
+    public static class Replica {
+
+        private final String nom;
+
+        private final DataSource dataSource;
+
+        private final JdbcTemplate jdbcTemplate;
+
+        /**
+         * Retard en millisecondes, Long.MAX_VALUE tant qu'il n'a pas été mesuré ou si le réplica est injoignable
+         */
+        private volatile long retardMs = Long.MAX_VALUE;
+
+        private Replica(String nom, DataSource dataSource) {
+            this.nom = nom;
+            this.dataSource = dataSource;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+        }
+
+        public String getNom() {
+            return nom;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        public long getRetardMs() {
+            return retardMs;
+        }
+    }
+
+    private final JdbcTemplate primaire;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final long retardMaxMs;
+
+    private final long intervalleMs;
+
+    private final AtomicInteger suivant = new AtomicInteger();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("replica-lag-"));
+
+    /**
+     * Dernier battement écrit par cette instance, aucun avant la première vérification
+     */
+    private long dernierBattement = Long.MAX_VALUE;
+
+    /**
+     * @param primaire      La base principale, où le battement est écrit
+     * @param replicas      Les réplicas par nom
+     * @param retardMax     Le retard au-delà duquel un réplica ne reçoit plus de lectures
+     * @param intervalle    L'intervalle entre deux vérifications
+     * @param meterRegistry Registre où publier communes.datasource.replica.lag, par réplica
+     */
+    public ReplicaLagMonitor(DataSource primaire, Map<String, DataSource> replicas, Duration retardMax,
+                             Duration intervalle, MeterRegistry meterRegistry) {
+        this.primaire = new JdbcTemplate(primaire);
+        this.retardMaxMs = retardMax.toMillis();
+        this.intervalleMs = intervalle.toMillis();
+        replicas.forEach((nom, dataSource) -> {
+            Replica replica = new Replica(nom, dataSource);
+            this.replicas.add(replica);
+            TimeGauge.builder("communes.datasource.replica.lag", replica,
+                    TimeUnit.MILLISECONDS, r -> r.retardMs == Long.MAX_VALUE ? Double.NaN : r.retardMs)
+                    .tag("replica", nom)
+                    .description("Retard du réplica sur la base principale, NaN s'il est injoignable")
+                    .register(meterRegistry);
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        executor.scheduleWithFixedDelay(this::verifier, 0, intervalleMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Arrête les vérifications et ferme les pools des réplicas
+     */
+    @Override
+    public void close() throws Exception {
+        executor.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) replica.dataSource).close();
+            }
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    /**
+     * Mesure le retard de chaque réplica, puis écrit un nouveau battement sur la base principale
+     */
+    public synchronized void verifier() {
+        for (Replica replica : replicas) {
+            try {
+                Long battement = replica.jdbcTemplate.queryForObject(LIRE_BATTEMENT, Long.class);
+                long retard = battement == null ? Long.MAX_VALUE
+                        : battement >= dernierBattement ? 0 : System.currentTimeMillis() - battement;
+                if (retard > retardMaxMs && replica.retardMs <= retardMaxMs) {
+                    LOGGER.warn("Réplica {} en retard de {} ms, les lectures passent par la base principale", replica.nom, retard);
+                }
+                replica.retardMs = retard;
+            } catch (RuntimeException e) {
+                if (replica.retardMs != Long.MAX_VALUE) {
+                    LOGGER.warn("Réplica {} injoignable, les lectures passent par la base principale", replica.nom, e);
+                }
+                replica.retardMs = Long.MAX_VALUE;
+            }
+        }
+        try {
+            long battement = System.currentTimeMillis();
+            primaire.update(ECRIRE_BATTEMENT, battement);
+            dernierBattement = battement;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Impossible d'écrire le battement de réplication sur la base principale", e);
+        }
+    }
+
+    /**
+     * @return Le prochain réplica à jour à qui confier une lecture, null si aucun ne l'est
+     */
+    public Replica choisirReplica() {
+        int nbReplicas = replicas.size();
+        int debut = Math.floorMod(suivant.getAndIncrement(), nbReplicas);
+        for (int i = 0; i < nbReplicas; i++) {
+            Replica replica = replicas.get((debut + i) % nbReplicas);
+            if (replica.retardMs <= retardMaxMs) {
+                return replica;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+package com.ipiecoles.communes.web.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure l'exécution de chaque requête SQL (execute, executeQuery, executeUpdate, executeBatch...) et signale
+ * celles qui dépassent un seuil : message WARN avec la méthode du contrôleur à l'origine de la requête,
+ * compteur communes.db.slow.statements avec le tag handler, et requête gardée par {@link StatementCounter}.
+ * <p>
+ * Les requêtes de JdbcTemplate, de Flyway et des imports sont mesurées comme celles d'Hibernate. Le temps mesuré
+ * est celui du pilote jusqu'au retour de la méthode : avec MySQL, qui envoie toutes les lignes d'un coup, il
+ * comprend leur transfert.
+ */
+public class SlowStatementDataSource extends DelegatingDataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowStatementDataSource.class);
+
+    private final long seuilNanos;
+
+    private final StatementCounter statementCounter;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param dataSource       La source de données à mesurer
+     * @param seuil            La durée à partir de laquelle une requête est lente
+     * @param statementCounter Où garder les requêtes lentes de la requête HTTP en cours
+     * @param meterRegistry    Registre où publier communes.db.slow.statements
+     */
+    public SlowStatementDataSource(DataSource dataSource, Duration seuil, StatementCounter statementCounter, MeterRegistry meterRegistry) {
+        super(dataSource);
+        this.seuilNanos = seuil.toNanos();
+        this.statementCounter = statementCounter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return mesurer(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return mesurer(super.getConnection(username, password));
+    }
+
+    private Connection mesurer(Connection connexion) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, methode, args) -> {
+                    switch (methode.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            Object resultat = invoquer(connexion, methode, args);
+                            //prepareStatement(sql...), prepareCall(sql...) ou createStatement()
+                            if (resultat instanceof Statement) {
+                                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                                return mesurer((Statement) resultat, methode.getReturnType(), sql);
+                            }
+                            return resultat;
+                    }
+                });
+    }
+
+    private Statement mesurer(Statement statement, Class<?> type, String sqlPrepare) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, methode, args) -> {
+                    switch (methode.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            if (!methode.getName().startsWith("execute")) {
+                                return invoquer(statement, methode, args);
+                            }
+                            long debut = System.nanoTime();
+                            try {
+                                return invoquer(statement, methode, args);
+                            } finally {
+                                long duree = System.nanoTime() - debut;
+                                if (duree >= seuilNanos) {
+                                    //Statement.execute(sql) porte le SQL, PreparedStatement.execute() non
+                                    signaler(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sqlPrepare, duree);
+                                }
+                            }
+                    }
+                });
+    }
+
+    private void signaler(String sql, long dureeNanos) {
+        long dureeMs = TimeUnit.NANOSECONDS.toMillis(dureeNanos);
+        String origine = statementCounter.getOrigine();
+        LOGGER.warn("Requête SQL lente ({} ms) dans {} : {}", dureeMs, origine == null ? "une tâche hors requête HTTP" : origine, sql);
+        statementCounter.requeteLente(sql, dureeMs);
+        meterRegistry.counter("communes.db.slow.statements", "handler", origine == null ? "none" : origine).increment();
+    }
+
+    private static Object invoquer(Object cible, Method methode, Object[] args) throws Throwable {
+        try {
+            return methode.invoke(cible, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
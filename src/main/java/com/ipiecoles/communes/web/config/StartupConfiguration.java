@@ -0,0 +1,100 @@
+package com.ipiecoles.communes.web.config;
+
+import com.ipiecoles.communes.web.service.CommuneNeighborGraph;
+import com.ipiecoles.communes.web.service.CommuneSearchIndex;
+import com.ipiecoles.communes.web.service.CommuneSpatialIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Démarrage de l'application :
+ * <ul>
+ *     <li>avec spring.main.lazy-initialization=true (profil fast-start), les beans les plus utilisés restent créés au
+ *     démarrage : source de données, migrations Flyway, EntityManagerFactory et index des communes en mémoire. Les
+ *     autres le sont à leur première utilisation</li>
+ *     <li>une fois l'application prête, la durée de chaque phase du démarrage et les beans les plus longs à créer
+ *     sont écrits dans les logs, à partir des étapes enregistrées par le {@link BufferingApplicationStartup}
+ *     installé par WebApplication (aussi consultables sur /actuator/startup)</li>
+ *     <li>communes.startup.exit=true arrête l'application dès qu'elle est prête : c'est le lancement
+ *     d'entraînement qui produit l'archive AppCDS (profil Maven cds)</li>
+ * </ul>
+ */
+@Configuration
+public class StartupConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupConfiguration.class);
+
+    private static final int NB_BEANS_RAPPORT = 10;
+
+    @Value("${communes.startup.exit:false}")
+    private boolean arreterUneFoisPret;
+
+    @Bean
+    public static LazyInitializationExcludeFilter hotBeansLazyInitializationExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(DataSource.class, FlywayMigrationInitializer.class,
+                EntityManagerFactory.class, CommuneSpatialIndex.class, CommuneSearchIndex.class, CommuneNeighborGraph.class);
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        if (context.getApplicationStartup() instanceof BufferingApplicationStartup) {
+            LOGGER.info(rapport(((BufferingApplicationStartup) context.getApplicationStartup()).getBufferedTimeline(),
+                    ManagementFactory.getRuntimeMXBean().getUptime()));
+        }
+        if (arreterUneFoisPret) {
+            LOGGER.info("communes.startup.exit=true : arrêt de l'application");
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * @param timeline         Les étapes terminées du démarrage
+     * @param dureeDepuisJvmMs Le temps écoulé depuis le lancement de la JVM
+     * @return Le rapport : durée de chaque étape de premier niveau (préparation de l'environnement, rafraîchissement
+     * du contexte...) puis les beans les plus longs à créer, dépendances créées au passage comprises
+     */
+    public static String rapport(StartupTimeline timeline, long dureeDepuisJvmMs) {
+        List<StartupTimeline.TimelineEvent> etapes = timeline.getEvents();
+        StringBuilder rapport = new StringBuilder("Application prête ").append(dureeDepuisJvmMs)
+                .append(" ms après le lancement de la JVM. Étapes :");
+        etapes.stream()
+                .filter(e -> e.getStartupStep().getParentId() == null)
+                .forEach(e -> rapport.append("\n  ").append(e.getStartupStep().getName()).append(" : ")
+                        .append(e.getDuration().toMillis()).append(" ms"));
+        rapport.append("\nBeans les plus longs à créer :");
+        etapes.stream()
+                .filter(e -> "spring.beans.instantiate".equals(e.getStartupStep().getName()))
+                .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                .limit(NB_BEANS_RAPPORT)
+                .forEach(e -> rapport.append("\n  ").append(nomBean(e)).append(" : ")
+                        .append(e.getDuration().toMillis()).append(" ms"));
+        return rapport.toString();
+    }
+
+    private static String nomBean(StartupTimeline.TimelineEvent etape) {
+        return StreamSupport.stream(etape.getStartupStep().getTags().spliterator(), false)
+                .filter(tag -> "beanName".equals(tag.getKey()))
+                .map(tag -> tag.getValue())
+                .collect(Collectors.joining());
+    }
+}
@@ -0,0 +1,115 @@
+package com.ipiecoles.communes.web.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Compte, pour le thread courant, les requêtes SQL envoyées par Hibernate. Les lectures servies par le cache de
+ * second niveau ou le cache de requêtes ne sont pas comptées, pas plus que celles faites par JdbcTemplate.
+ * <p>
+ * Chaque texte SQL est compté séparément : une même requête exécutée de nombreuses fois pour une page signale
+ * un N+1 (collection ou association chargée élément par élément). Les requêtes lentes signalées par
+ * {@link SlowStatementDataSource} sont gardées avec leur durée, ainsi que la méthode du contrôleur à l'origine
+ * des requêtes, renseignée par {@link PageMetricsInterceptor}. Ce détail n'est gardé que lorsqu'une origine est
+ * renseignée, pour ne pas s'accumuler dans les threads qui ne sont jamais remis à zéro (imports, tâches de fond).
+ * <p>
+ * Le compteur est remis à zéro, sans origine, à la fin de chaque requête HTTP. Dans les tests, les requêtes d'une
+ * page se lisent dans la métrique communes.page.db.statements ; pour un appel direct :
+ * <pre>
+ * statementCounter.reinitialiser("test");
+ * userRepository.findAll().forEach(u -> u.getRoles().size());
+ * Assertions.assertThat(statementCounter.getRequetesRepetees(5)).isEmpty();
+ * </pre>
+ */
+public class StatementCounter implements StatementInspector {
+
+    private final ThreadLocal<Requetes> requetes = ThreadLocal.withInitial(Requetes::new);
+
+    @Override
+    public String inspect(String sql) {
+        Requetes courantes = requetes.get();
+        courantes.nb++;
+        if (courantes.origine != null) {
+            courantes.executions.merge(sql, 1, Integer::sum);
+        }
+        return sql;
+    }
+
+    /**
+     * Remet à zéro le compteur du thread courant
+     */
+    public void reinitialiser() {
+        reinitialiser(null);
+    }
+
+    /**
+     * Remet à zéro le compteur du thread courant
+     *
+     * @param origine La méthode à l'origine des requêtes qui suivent, IndexController.listeCommunes par exemple.
+     *                Sans origine, seul le nombre de requêtes est compté
+     */
+    public void reinitialiser(String origine) {
+        Requetes courantes = requetes.get();
+        courantes.nb = 0;
+        courantes.executions.clear();
+        courantes.lentes.clear();
+        courantes.origine = origine;
+    }
+
+    /**
+     * @return Le nombre de requêtes du thread courant depuis la dernière remise à zéro
+     */
+    public int getNbRequetes() {
+        return requetes.get().nb;
+    }
+
+    /**
+     * @param minimum Le nombre d'exécutions à partir duquel une requête est considérée comme répétée
+     * @return Les requêtes exécutées au moins minimum fois depuis la dernière remise à zéro, avec leur nombre
+     * d'exécutions
+     */
+    public Map<String, Integer> getRequetesRepetees(int minimum) {
+        return requetes.get().executions.entrySet().stream()
+                .filter(e -> e.getValue() >= minimum)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    /**
+     * @return Les requêtes lentes du thread courant depuis la dernière remise à zéro, durée en préfixe
+     */
+    public List<String> getRequetesLentes() {
+        return Collections.unmodifiableList(requetes.get().lentes);
+    }
+
+    /**
+     * @return La méthode à l'origine des requêtes du thread courant, null si aucune n'a été renseignée à la
+     * dernière remise à zéro
+     */
+    public String getOrigine() {
+        return requetes.get().origine;
+    }
+
+    void requeteLente(String sql, long dureeMs) {
+        Requetes courantes = requetes.get();
+        if (courantes.origine != null) {
+            courantes.lentes.add(dureeMs + " ms : " + sql);
+        }
+    }
+
+    private static class Requetes {
+
+        private int nb;
+
+        private final Map<String, Integer> executions = new HashMap<>();
+
+        private final List<String> lentes = new ArrayList<>();
+
+        private String origine;
+    }
+}
@@ -0,0 +1,73 @@
+package com.ipiecoles.communes.web.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Mode d'exécution sur threads virtuels, activé par communes.threads.virtual=true : chaque requête HTTP est
+ * traitée par un nouveau thread virtuel au lieu d'un thread du pool de Tomcat (server.tomcat.threads.max), et
+ * l'attente des réponses de la base n'occupe plus de thread système. Le nombre de connexions ouvertes en même
+ * temps est alors borné par un sémaphore, voir {@link ConnectionLimitingDataSource}.
+ * <p>
+ * Les threads virtuels demandent Java 21 à l'exécution. Le projet étant compilé pour Java 11, l'exécuteur est
+ * obtenu par réflexion ; sur une JVM plus ancienne, le démarrage échoue plutôt que de revenir en silence aux
+ * threads du pool.
+ */
+@Configuration
+@ConditionalOnProperty(name = "communes.threads.virtual", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadConfiguration.class);
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            LOGGER.info("Requêtes HTTP traitées sur des threads virtuels");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("communes.threads.virtual=true demande Java 21 ou plus, version actuelle : "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    /**
+     * Enveloppe la source de données principale (bean dataSource) dans un {@link ConnectionLimitingDataSource}.
+     * Par défaut, le nombre de connexions est celui du pool Hikari de la base principale ; à augmenter lorsque des
+     * réplicas sont configurés.
+     */
+    @Bean
+    public static BeanPostProcessor connectionLimitingPostProcessor(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        int maxConnexions = environment.getProperty("communes.jdbc.max-concurrent", Integer.class,
+                environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10));
+        Duration attenteMax = environment.getProperty("communes.jdbc.acquire-timeout", Duration.class, Duration.ofSeconds(30));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if ("dataSource".equals(beanName) && bean instanceof DataSource) {
+                    return new ConnectionLimitingDataSource((DataSource) bean, maxConnexions, attenteMax, meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
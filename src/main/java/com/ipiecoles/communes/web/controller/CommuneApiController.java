@@ -0,0 +1,170 @@
+package com.ipiecoles.communes.web.controller;
+
+import com.ipiecoles.communes.web.model.CommuneImportReport;
+import com.ipiecoles.communes.web.model.CommuneSuggestion;
+import com.ipiecoles.communes.web.service.CommuneExportService;
+import com.ipiecoles.communes.web.service.CommuneImportService;
+import com.ipiecoles.communes.web.service.CommuneSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * API JSON utilisée par l'interface sans passer par le rendu des templates
+ */
+@RestController
+@RequestMapping("/api/communes")
+public class CommuneApiController {
+
+    /**
+     * En-tête ajouté lorsque le budget de temps a été dépassé et que les suggestions peuvent être incomplètes
+     */
+    public static final String HEADER_SUGGESTIONS_PARTIELLES = "X-Suggestions-Partielles";
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    @Autowired
+    private CommuneSearchIndex communeSearchIndex;
+
+    @Autowired
+    private CommuneImportService communeImportService;
+
+    @Autowired
+    private CommuneExportService communeExportService;
+
+    @Value("${communes.suggest.max-limit:20}")
+    private int limiteMax;
+
+    @Value("${communes.suggest.budget:20ms}")
+    private Duration budget;
+
+    @Value("${communes.suggest.cache:60s}")
+    private Duration dureeCache;
+
+    /**
+     * Suggestions pour l'autocomplétion de la recherche : par préfixe du code INSEE ou du code postal si q est
+     * un début de code, sinon par pertinence du nom
+     *
+     * @param q     Le texte saisi
+     * @param limit Le nombre maximum de suggestions
+     * @return Les suggestions, de la plus pertinente à la moins pertinente
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<CommuneSuggestion>> suggest(@RequestParam(defaultValue = "") String q,
+                                                           @RequestParam(defaultValue = "10") Integer limit) {
+        if (limit < 1 || limit > limiteMax) {
+            throw new IllegalArgumentException("La valeur du paramètre limit doit être comprise entre 1 et " + limiteMax);
+        }
+        long echeance = System.nanoTime() + budget.toNanos();
+        List<CommuneSuggestion> suggestions = communeSearchIndex.suggest(q, limit, echeance).stream()
+                .map(CommuneSuggestion::new)
+                .collect(Collectors.toList());
+
+        if (System.nanoTime() - echeance > 0) {
+            //Réponse peut-être incomplète : elle ne doit pas être gardée en cache
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .header(HEADER_SUGGESTIONS_PARTIELLES, "true")
+                    .body(suggestions);
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(dureeCache).cachePublic())
+                .body(suggestions);
+    }
+
+    /**
+     * Jeton CSRF de la session, à renvoyer dans l'en-tête indiqué par les clients sans formulaire qui appellent
+     * l'import
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @GetMapping("/csrf")
+    public Map<String, String> csrf(CsrfToken csrfToken) {
+        return Map.of("headerName", csrfToken.getHeaderName(), "token", csrfToken.getToken());
+    }
+
+    /**
+     * Import en masse de communes : le corps de la requête est lu au fil de l'eau, sans être chargé en mémoire.
+     * Comme toute requête modifiant des données, l'import demande le jeton CSRF de la session (voir
+     * {@link #csrf(CsrfToken)}). Exemple, avec le cookie de session d'un administrateur connecté :
+     * curl -X POST -b cookies.txt -H 'X-CSRF-TOKEN: ...' -H 'Content-Type: text/csv' --data-binary @communes.csv
+     * .../api/communes/import
+     *
+     * @return Le compte rendu de l'import, avec le détail des premières lignes rejetées
+     */
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/import", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public CommuneImportReport importCommunes(HttpServletRequest request) throws IOException {
+        CommuneImportService.Format format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE))
+                ? CommuneImportService.Format.CSV : CommuneImportService.Format.JSON;
+        return communeImportService.importer(request.getInputStream(), format);
+    }
+
+    /**
+     * Export de toutes les communes, ou de celles correspondant à la recherche, écrit directement dans la réponse
+     * au fur et à mesure de la lecture. La réponse est compressée si le client accepte gzip.
+     *
+     * @param format csv ou ndjson
+     * @param search La même recherche que sur la page d'accueil
+     */
+    @GetMapping("/export")
+    public void exportCommunes(@RequestParam(defaultValue = "csv") String format,
+                               @RequestParam(required = false, defaultValue = "") String search,
+                               @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                               HttpServletResponse response) throws IOException {
+        CommuneExportService.Format formatExport;
+        try {
+            formatExport = CommuneExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("La valeur du paramètre format doit être csv ou ndjson");
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        response.setContentType(formatExport == CommuneExportService.Format.CSV ? TEXT_CSV_VALUE + ";charset=UTF-8" : APPLICATION_NDJSON_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("communes." + formatExport.name().toLowerCase(Locale.ROOT)).build().toString());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        OutputStream flux = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+        communeExportService.exporter(search, formatExport, flux);
+        if (gzip) {
+            ((GZIPOutputStream) flux).finish();
+        }
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> handleIllegalArgumentException(IllegalArgumentException e) {
+        return Map.of("message", e.getMessage());
+    }
+}
@@ -1,8 +1,13 @@
 package com.ipiecoles.communes.web.controller;
 
 import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneProche;
 import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneChangeEvent;
+import com.ipiecoles.communes.web.service.CommuneNeighborGraph;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
@@ -15,42 +20,74 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Controller
 public class CommuneController {
 
-    private static final double DEGRE_LAT_KM = 111d;
-    private static final double DEGRE_LONG_KM = 77d;
-
     @Autowired
     private CommuneRepository communeRepository;
 
+    @Autowired
+    private CommuneNeighborGraph communeNeighborGraph;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PageETags pageETags;
+
+    @Autowired
+    private CommuneQueries communeQueries;
+
+    @Autowired
+    private FragmentCache fragmentCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @PreAuthorize("hasAnyRole('ROLE_USER', 'ROLE_ADMIN')")
     @GetMapping("/communes/{codeInsee}")
     public String getCommune(
             @PathVariable String codeInsee,
             @RequestParam(defaultValue = "10") Integer perimetre,
-            final ModelMap model) {
-        Commune commune = communeRepository.findById(codeInsee)
-                .orElseThrow(() -> new EntityNotFoundException("Impossible de trouver la commune de code INSEE " + codeInsee));
+            final ModelMap model,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        if (pageETags.checkNotModified(request, response)) {
+            return null;
+        }
+        Commune commune = communeQueries.findById(codeInsee);
+        if (commune == null) {
+            throw new EntityNotFoundException("Impossible de trouver la commune de code INSEE " + codeInsee);
+        }
 
         //Récupérer les communes proches de celle-ci
         model.put("commune", commune);
         model.put("perimetre", perimetre);
 
         //Si le périmètre dépasse 20km
-        if (perimetre > 20) {
+        if (perimetre > CommuneNeighborGraph.PERIMETRE_MAX_KM) {
             model.addAttribute("type", "danger");
             model.addAttribute("message", "Le périmètre de recherche ne peut pas dépasser les 20 km");
-        } else {
-            model.put("communesProches", this.findCommunesProches(commune, perimetre));
         }
         model.put("newCommune", false);
 
+        //La carte et les communes proches sont les mêmes pour tous, le formulaire d'édition est rendu à chaque fois
+        model.put("voisinage", fragmentCache.render("detail", "voisinage", model, request, response,
+                () -> {
+                    if (perimetre <= CommuneNeighborGraph.PERIMETRE_MAX_KM) {
+                        List<CommuneProche> communesProches = communeNeighborGraph.findCommunesProches(commune, perimetre);
+                        meterRegistry.counter(CommuneNeighborGraph.COMMUNES_PROCHES_METRIQUE, "source", "detail")
+                                .increment(communesProches.size());
+                        model.put("communesProches", communesProches);
+                    }
+                },
+                codeInsee, perimetre, request.getParameter("newCommune") != null));
+
         model.put("templateDetail", "detail");
         model.put("fragmentDetail", "fragDetail");
 
@@ -64,7 +101,9 @@ public class CommuneController {
                                  final BindingResult result,
                                  RedirectAttributes attributes) {
         if (!result.hasErrors()) {
+            boolean created = !communeRepository.existsById(commune.getCodeInsee());
             commune = communeRepository.save(commune);
+            eventPublisher.publishEvent(CommuneChangeEvent.saved(commune, created));
             model.put("commune", commune);
             attributes.addFlashAttribute("type", "success");
             attributes.addFlashAttribute("message", "Enregistrement de la commune " + commune.getNom() + " effectuée !");
@@ -89,8 +128,9 @@ public class CommuneController {
                 throw new EntityNotFoundException("Le code INSEE de la commune est obligatoire");
             }
 
+            boolean created = !communeRepository.existsById(commune.getCodeInsee());
             commune = communeRepository.save(commune);
-
+            eventPublisher.publishEvent(CommuneChangeEvent.saved(commune, created));
 
             attributes.addFlashAttribute("type", "success");
             attributes.addFlashAttribute("message", "Enregistrement de la commune " + commune.getNom() + " effectuée !");
@@ -122,33 +162,10 @@ public class CommuneController {
         } catch (Exception e) {
             throw new EntityNotFoundException("Impossible de trouver la commune de code INSEE " + codeInsee);
         }
+        eventPublisher.publishEvent(CommuneChangeEvent.deleted(codeInsee));
         attributes.addFlashAttribute("type", "success");
         attributes.addFlashAttribute("message", "Suppression de la commune effectuée");
         return "redirect:/";
     }
 
-    /**
-     * Récupère une liste des communes dans un périmètre autour d'une commune
-     *
-     * @param commune       La commune sur laquelle porte la recherche
-     * @param perimetreEnKm Le périmètre de recherche en kilomètre
-     * @return La liste des communes triées de la plus proche à la plus lointaine
-     */
-    private List<Commune> findCommunesProches(Commune commune, Integer perimetreEnKm) {
-        Double latMin, latMax, longMin, longMax, degreLat, degreLong;
-        //1 degré latitude = 111km, 1 degré longitude = 77km
-        degreLat = perimetreEnKm / DEGRE_LAT_KM;
-        degreLong = perimetreEnKm / DEGRE_LONG_KM;
-        latMin = commune.getLatitude() - degreLat;
-        latMax = commune.getLatitude() + degreLat;
-        longMin = commune.getLongitude() - degreLong;
-        longMax = commune.getLongitude() + degreLong;
-        List<Commune> communesProches = communeRepository.findByLatitudeBetweenAndLongitudeBetween(latMin, latMax, longMin, longMax);
-
-        return communesProches.stream().
-                filter(commune1 -> !commune1.getNom().equals(commune.getNom()) && commune1.getDistance(commune.getLatitude(), commune.getLongitude()) <= perimetreEnKm).
-                sorted(Comparator.comparing(o -> o.getDistance(commune.getLatitude(), commune.getLongitude()))).
-                collect(Collectors.toList());
-    }
-
 }
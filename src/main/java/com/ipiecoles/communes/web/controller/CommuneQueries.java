@@ -0,0 +1,57 @@
+package com.ipiecoles.communes.web.controller;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneCountService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Lectures des communes pour les contrôleurs et les templates (${@communeQueries.count()}), à utiliser à la place
+ * de CommuneRepository dans les templates. Une instance par requête HTTP : un même appel fait plusieurs fois
+ * pendant la requête, par le contrôleur puis par un fragment par exemple, n'interroge la base qu'une fois.
+ * Les agrégats communs à toutes les pages viennent des totaux tenus en mémoire, comme {@link CommuneCountService}.
+ */
+@Component
+@RequestScope
+public class CommuneQueries {
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @Autowired
+    private CommuneCountService communeCountService;
+
+    private final Map<List<Object>, Object> resultats = new HashMap<>();
+
+    /**
+     * @return Le nombre total de communes, sans requête tant que le total en mémoire est à jour
+     */
+    public long count() {
+        return communeCountService.count();
+    }
+
+    /**
+     * @return La commune, null si elle n'existe pas
+     */
+    public Commune findById(String codeInsee) {
+        return memoriser("findById", () -> communeRepository.findById(codeInsee).orElse(null), codeInsee);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T memoriser(String methode, Supplier<T> requete, Object... parametres) {
+        List<Object> cle = Arrays.asList(methode, Arrays.asList(parametres));
+        //containsKey plutôt que computeIfAbsent : une absence de résultat est aussi gardée
+        if (!resultats.containsKey(cle)) {
+            resultats.put(cle, requete.get());
+        }
+        return (T) resultats.get(cle);
+    }
+}
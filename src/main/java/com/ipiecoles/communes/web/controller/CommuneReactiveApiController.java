@@ -0,0 +1,132 @@
+package com.ipiecoles.communes.web.controller;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneProche;
+import com.ipiecoles.communes.web.model.CommuneRecord;
+import com.ipiecoles.communes.web.repository.CommuneReactiveRepository;
+import com.ipiecoles.communes.web.service.CommuneNeighborGraph;
+import com.ipiecoles.communes.web.util.GeoUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * API JSON en lecture seule des communes, servie sans bloquer de thread : les requêtes passent par R2DBC
+ * ({@link CommuneReactiveRepository}) et le thread de Tomcat est rendu dès que la méthode a renvoyé son Flux ou
+ * son Mono. La réponse est écrite à l'arrivée des lignes.
+ * <p>
+ * Les listes sont renvoyées en tableau JSON, ou en application/x-ndjson si le client le demande : les communes
+ * sont alors écrites une à une, et la lecture des lignes suivantes attend que le client ait consommé les
+ * précédentes.
+ */
+@RestController
+@RequestMapping("/api/reactive/communes")
+public class CommuneReactiveApiController {
+
+    private static final List<String> SORT_PROPERTIES = Arrays.asList("codeInsee", "nom", "codePostal", "latitude", "longitude");
+
+    @Autowired
+    private CommuneReactiveRepository communeReactiveRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${communes.api.max-size:100}")
+    private int tailleMax;
+
+    /**
+     * Page de communes, éventuellement limitée à celles dont le nom contient la recherche (LIKE en SQL, sans
+     * tenir compte de la casse). Contrairement à la page d'accueil, qui passe par CommuneSearchIndex, les
+     * fautes de frappe ne sont pas tolérées et les résultats suivent le tri demandé, pas la pertinence.
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, CommuneApiController.APPLICATION_NDJSON_VALUE})
+    public Flux<Commune> listeCommunes(@RequestParam(defaultValue = "0") Integer page,
+                                       @RequestParam(defaultValue = "10") Integer size,
+                                       @RequestParam(defaultValue = "codeInsee") String sortProperty,
+                                       @RequestParam(defaultValue = "ASC") String sortDirection,
+                                       @RequestParam(defaultValue = "") String search) {
+        if (page < 0) {
+            throw new IllegalArgumentException("La valeur du paramètre page n'est pas correcte");
+        }
+        if (size < 1 || size > tailleMax) {
+            throw new IllegalArgumentException("La valeur du paramètre size doit être comprise entre 1 et " + tailleMax);
+        }
+        if (!Arrays.asList("ASC", "DESC").contains(sortDirection)) {
+            throw new IllegalArgumentException("La valeur du paramètre sortDirection n'est pas correcte");
+        }
+        if (!SORT_PROPERTIES.contains(sortProperty)) {
+            throw new IllegalArgumentException("La valeur du paramètre sortProperty n'est pas correcte");
+        }
+        //Tri complété par le code INSEE pour que les pages ne se chevauchent pas
+        PageRequest pageRequest = PageRequest.of(page, size,
+                Sort.by(Sort.Direction.fromString(sortDirection), sortProperty).and(Sort.by("codeInsee")));
+        Flux<CommuneRecord> communes = search.isEmpty() ? communeReactiveRepository.findAllBy(pageRequest)
+                : communeReactiveRepository.findByNomContainingIgnoreCase(search, pageRequest);
+        return communes.map(CommuneRecord::toCommune);
+    }
+
+    @GetMapping("/{codeInsee}")
+    public Mono<ResponseEntity<Commune>> getCommune(@PathVariable String codeInsee) {
+        return communeReactiveRepository.findById(codeInsee)
+                .map(commune -> ResponseEntity.ok(commune.toCommune()))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Communes proches, de la plus proche à la plus lointaine, avec les mêmes règles que la page de détail :
+     * distance arrondie au kilomètre, communes du même nom exclues. Vide si la commune n'existe pas.
+     *
+     * @param perimetre Le périmètre de recherche en kilomètres
+     */
+    @GetMapping(value = "/{codeInsee}/proches", produces = {MediaType.APPLICATION_JSON_VALUE, CommuneApiController.APPLICATION_NDJSON_VALUE})
+    public Flux<CommuneProche> getCommunesProches(@PathVariable String codeInsee,
+                                                  @RequestParam(defaultValue = "10") Integer perimetre) {
+        if (perimetre < 1 || perimetre > CommuneNeighborGraph.PERIMETRE_MAX_KM) {
+            throw new IllegalArgumentException("La valeur du paramètre perimetre doit être comprise entre 1 et "
+                    + CommuneNeighborGraph.PERIMETRE_MAX_KM);
+        }
+        double distanceMax = perimetre + 0.5;
+        Counter communesRenvoyees = meterRegistry.counter(CommuneNeighborGraph.COMMUNES_PROCHES_METRIQUE, "source", "api");
+        return communeReactiveRepository.findById(codeInsee).flatMapMany(commune -> {
+            double deltaLatitude = distanceMax / GeoUtils.DEGRE_LAT_KM;
+            double deltaLongitude = deltaLatitude / Math.max(Math.cos(Math.toRadians(commune.getLatitude())), 0.01);
+            return communeReactiveRepository.findByLatitudeBetweenAndLongitudeBetween(
+                            commune.getLatitude() - deltaLatitude, commune.getLatitude() + deltaLatitude,
+                            commune.getLongitude() - deltaLongitude, commune.getLongitude() + deltaLongitude)
+                    .filter(c -> !c.getNom().equals(commune.getNom()))
+                    .map(c -> Tuples.of(c.toCommune(), GeoUtils.distanceKm(commune.getLatitude(), commune.getLongitude(), c.getLatitude(), c.getLongitude())))
+                    .filter(t -> t.getT2() < distanceMax)
+                    .sort(Comparator.comparingDouble(Tuple2<Commune, Double>::getT2).thenComparing(t -> t.getT1().getCodeInsee()))
+                    .map(t -> new CommuneProche(t.getT1(), Math.round(t.getT2())))
+                    .doOnNext(c -> communesRenvoyees.increment());
+        });
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> handleIllegalArgumentException(IllegalArgumentException e) {
+        return Map.of("message", e.getMessage());
+    }
+}
@@ -0,0 +1,116 @@
+package com.ipiecoles.communes.web.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ipiecoles.communes.web.service.CommuneChangeEvent;
+import com.ipiecoles.communes.web.service.CommuneDataVersion;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.ui.ModelMap;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.support.RequestContextUtils;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.spring5.expression.ThymeleafEvaluationContext;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Cache du HTML rendu des parties de pages qui ne dépendent que des données et des paramètres de la requête
+ * (tableau et pagination de la liste, carte et communes proches du détail). Les parties propres à
+ * l'utilisateur (blocs sec:authorize, formulaires avec jeton CSRF, messages) restent rendues à chaque requête
+ * par le template, qui insère le HTML en cache à leur place.
+ * <p>
+ * La clé contient la génération des données, lue sans verrou ni requête (voir {@link CommuneDataVersion}) : une
+ * modification rend les entrées existantes inutilisables. Une lecture du cache n'attend jamais la base.
+ * La taille du cache est bornée par le poids du HTML gardé ; les métriques cache.gets, cache.evictions... sont
+ * publiées avec le tag cache=fragments. Le rendu des fragments absents du cache est mesuré par
+ * communes.view.render, avec le tag view=template::fragment.
+ */
+@Component
+public class FragmentCache {
+
+    public static final String NOM_CACHE = "fragments";
+
+    private final Cache<String, String> cache;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    private SpringTemplateEngine templateEngine;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private CommuneDataVersion communeDataVersion;
+
+    public FragmentCache(@Value("${communes.fragments.max-size:16MB}") DataSize tailleMax,
+                         @Value("${communes.fragments.ttl:10m}") Duration ttl,
+                         MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                //Poids approximatif en octets, deux par caractère
+                .maximumWeight(tailleMax.toBytes())
+                .<String, String>weigher((cle, html) -> 2 * (cle.length() + html.length()))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NOM_CACHE);
+    }
+
+    /**
+     * Renvoie le HTML d'un fragment, rendu avec le modèle de la page s'il n'est pas en cache
+     *
+     * @param template      Le template contenant le fragment
+     * @param fragment      Le nom du fragment (th:fragment)
+     * @param model         Le modèle de la page
+     * @param remplirModele Complète le modèle avec les données du fragment, appelé seulement s'il n'est pas en cache
+     * @param parametres    Les paramètres de la requête dont dépend le rendu du fragment
+     */
+    public String render(String template, String fragment, ModelMap model, HttpServletRequest request,
+                         HttpServletResponse response, Runnable remplirModele, Object... parametres) {
+        StringBuilder cle = new StringBuilder(template).append("::").append(fragment)
+                .append('|').append(communeDataVersion.getGeneration());
+        for (Object parametre : parametres) {
+            //Longueur en préfixe : deux listes de paramètres différentes ne peuvent pas donner la même clé
+            String valeur = String.valueOf(parametre);
+            cle.append('|').append(valeur.length()).append(':').append(valeur);
+        }
+        //Pas de cache.get(cle, chargement) : le remplissage du modèle interroge la base, et les autres lectures du
+        //cache attendraient la fin d'un calcul en cours. Deux requêtes simultanées peuvent rendre le même fragment.
+        String html = cache.getIfPresent(cle.toString());
+        if (html == null) {
+            remplirModele.run();
+            WebContext context = new WebContext(request, response, request.getServletContext(),
+                    RequestContextUtils.getLocale(request), model);
+            context.setVariable(ThymeleafEvaluationContext.THYMELEAF_EVALUATION_CONTEXT_CONTEXT_VARIABLE_NAME,
+                    new ThymeleafEvaluationContext(applicationContext, null));
+            html = Timer.builder("communes.view.render")
+                    .tag("view", template + "::" + fragment)
+                    .description("Rendu des templates Thymeleaf")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(() -> templateEngine.process(template, Set.of(fragment), context));
+            cache.put(cle.toString(), html);
+        }
+        return html;
+    }
+
+    /**
+     * Les entrées des générations précédentes ne seront plus lues : autant libérer la place tout de suite
+     */
+    @EventListener
+    public void onCommuneChange(CommuneChangeEvent event) {
+        cache.invalidateAll();
+    }
+}
@@ -1,10 +1,10 @@
 package com.ipiecoles.communes.web.controller;
 
 import org.springframework.http.HttpStatus;
-import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.servlet.ModelAndView;
 
 import javax.persistence.EntityNotFoundException;
 
@@ -13,9 +13,10 @@ public class GlobalExceptionHandler {
 
     @ExceptionHandler(EntityNotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
-    public String handleEntityNotFoundException(EntityNotFoundException e,
-                                                final ModelMap model) {
-        model.put("message", e.getMessage());
-        return "error";
+    public ModelAndView handleEntityNotFoundException(EntityNotFoundException e) {
+        //Un ModelMap ne peut pas être passé en paramètre d'un @ExceptionHandler
+        ModelAndView modelAndView = new ModelAndView("error");
+        modelAndView.addObject("message", e.getMessage());
+        return modelAndView;
     }
 }
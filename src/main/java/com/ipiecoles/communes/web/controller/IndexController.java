@@ -1,64 +1,155 @@
 package com.ipiecoles.communes.web.controller;
 
 import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneCursor;
 import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneCountService;
+import com.ipiecoles.communes.web.service.CommuneSearchIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Controller
 public class IndexController {
 
-    private static final List<String> communeObjectFieldName = Arrays.stream(Commune.class.getDeclaredFields()).map(Field::getName).collect(Collectors.toList());
+    private static final List<String> communeObjectFieldName = Arrays.stream(Commune.class.getDeclaredFields())
+            .filter(field -> !Modifier.isStatic(field.getModifiers()))
+            //La date de modification n'est pas affichée : pas de tri possible
+            .filter(field -> !"updatedAt".equals(field.getName()))
+            .map(Field::getName)
+            .collect(Collectors.toList());
+
+    /**
+     * Tris possibles des résultats d'une recherche, faits en mémoire sur les communes trouvées par l'index
+     */
+    private static final Map<String, Comparator<Commune>> comparateurs = Map.of(
+            "codeInsee", Comparator.comparing(Commune::getCodeInsee),
+            "nom", Comparator.comparing(Commune::getNom, Comparator.nullsLast(Comparator.naturalOrder())),
+            "codePostal", Comparator.comparing(Commune::getCodePostal, Comparator.nullsLast(Comparator.naturalOrder())),
+            "latitude", Comparator.comparing(Commune::getLatitude, Comparator.nullsLast(Comparator.naturalOrder())),
+            "longitude", Comparator.comparing(Commune::getLongitude, Comparator.nullsLast(Comparator.naturalOrder())));
 
     private static final Pattern numberPattern = Pattern.compile("-?\\d+(\\.\\d+)?");
 
+    /**
+     * Nombre de pages proposées de part et d'autre de la page courante dans la liste déroulante de la pagination
+     */
+    static final int PAGES_AUTOUR = 10;
+
     @Autowired
     private CommuneRepository communeRepository;
 
+    @Autowired
+    private CommuneCountService communeCountService;
+
+    @Autowired
+    private CommuneSearchIndex communeSearchIndex;
+
+    @Autowired
+    private PageETags pageETags;
+
+    @Autowired
+    private FragmentCache fragmentCache;
+
     @GetMapping(value = "/")
     public String listeCommunes(@RequestParam(value = "page", defaultValue = "0") Integer page,
                                 @RequestParam(defaultValue = "10") Integer size,
-                                @RequestParam(defaultValue = "codeInsee") String sortProperty,
+                                @RequestParam(required = false) String sortProperty,
                                 @RequestParam(defaultValue = "ASC") String sortDirection,
                                 @RequestParam(required = false, defaultValue = "") String search,
+                                @RequestParam(required = false) Boolean keyset,
+                                @RequestParam(required = false) String after,
+                                @RequestParam(required = false) String before,
                                 @RequestParam(required = false) Boolean successfulConnection,
-                                final ModelMap model) {
-        long nbCommunes = communeRepository.count();
-        model.put("nbCommunes", nbCommunes);
-
+                                final ModelMap model,
+                                HttpServletRequest request,
+                                HttpServletResponse response) {
         if (Boolean.TRUE.equals(successfulConnection)) {
             model.addAttribute("type", "success");
             model.addAttribute("message", "La connection a réussi");
         }
 
-        //On vérifie la validité des arguments
-        checkParametersValidity(nbCommunes, size, page, sortDirection, sortProperty);
-
+        boolean recherche = search != null && !search.isEmpty();
+        //Sans tri demandé, la liste complète est triée par code INSEE et une recherche par pertinence
+        if ((sortProperty == null || sortProperty.isEmpty()) && !recherche) {
+            sortProperty = "codeInsee";
+        }
 
-        //Constituer un PageRequest
-        PageRequest pageRequest = PageRequest.of(page, size, Sort.Direction.fromString(sortDirection), sortProperty);
-        Page<Commune> communes;
-        if (search == null || search.isEmpty()) {
-            //Appeler findAll si search est null
-            communes = communeRepository.findAll(pageRequest);
-        } else if (isCodeInsee(search)) {
+        if (recherche && isCodeInsee(search)) {
             //Dans le cas où la valeur de search est un code Insee
             return "redirect:/communes/" + search;
+        }
+
+        if (pageETags.checkNotModified(request, response)) {
+            return null;
+        }
+
+        //La pagination par curseur ne s'applique qu'à la liste complète, là où l'on pagine en profondeur
+        boolean keysetMode = (Boolean.TRUE.equals(keyset) || after != null || before != null) && !recherche;
+        String sortPropertyListe = sortProperty;
+        //Le tableau et la pagination ne dépendent que des paramètres de la requête : seuls les messages et le
+        //bouton réservé aux administrateurs sont rendus à chaque fois
+        model.put("tableCommunes", fragmentCache.render("listeCommunes", "tableCommunes", model, request, response,
+                () -> {
+                    if (keysetMode) {
+                        listeCommunesKeyset(size, sortPropertyListe, sortDirection, after, before, model);
+                    } else {
+                        listeCommunesPaginee(page, size, sortPropertyListe, sortDirection, search, model);
+                    }
+                },
+                //tab.html lit le paramètre sortProperty tel qu'il a été envoyé
+                page, size, request.getParameter("sortProperty"), sortDirection, keyset, after, before, search));
+
+        model.put("fragment", "listeCommunes");
+        model.put("template", "listeCommunes");
+        return "main";
+    }
+
+    /**
+     * Page de la liste complète ou des résultats d'une recherche
+     */
+    private void listeCommunesPaginee(Integer page,
+                                      Integer size,
+                                      String sortProperty,
+                                      String sortDirection,
+                                      String search,
+                                      final ModelMap model) {
+        Page<Commune> communes;
+        if (search.isEmpty()) {
+            long nbCommunes = communeCountService.count();
+
+            //On vérifie la validité des arguments
+            checkParametersValidity(nbCommunes, size, page, sortDirection, sortProperty);
+
+            //Appeler findAllBy si search est null, le total étant déjà connu
+            PageRequest pageRequest = PageRequest.of(page, size, Sort.Direction.fromString(sortDirection), sortProperty);
+            communes = new PageImpl<>(communeRepository.findAllBy(pageRequest).getContent(), pageRequest, nbCommunes);
         } else {
-            //Appeler findByNomContainingIgnoreCase si search n'est pas null
-            communes = communeRepository.findByNomContainingIgnoreCase(search, pageRequest);
+            //Recherche insensible à la casse et aux accents dans l'index en mémoire
+            communes = rechercheCommunes(search, page, size, sortProperty, sortDirection);
+            sortProperty = sortProperty == null ? "" : sortProperty;
         }
 
         model.put("communes", communes);
@@ -67,17 +158,159 @@ public class IndexController {
         //Affichage des communes de 1 à 10 => page = 0 et size = 10
         //Affichage des communes de 11 à 20 => page = 1 et size = 10
         //Affichage des communes de 41 à 60 => page = 2 et size = 20
-        model.put("start", page * size + 1);//A remplacer par la valeur dynamique
-        model.put("end", (page + 1) * size);//A remplacer par la valeur dynamique
+        model.put("start", page * size + 1);
+        model.put("end", Math.min((long) (page + 1) * size, communes.getTotalElements()));
         model.put("page", page);
         model.put("search", search);
         model.put("size", size);
         model.put("sortProperty", sortProperty);
         model.put("sortDirection", sortDirection);
 
-        model.put("fragment", "listeCommunes");
-        model.put("template", "listeCommunes");
-        return "main";
+        //Pages et liens calculés une fois ici plutôt qu'à chaque option ou lien du fragment pagination
+        Map<String, Object> parametres = parametresLien(size, sortProperty, sortDirection);
+        parametres.put("search", search);
+        model.put("pages", pagesProposees(page, communes.getTotalPages()));
+        model.put("previousUrl", communes.hasPrevious() ? lienListe("page", page - 1, parametres) : null);
+        model.put("nextUrl", communes.hasNext() ? lienListe("page", page + 1, parametres) : null);
+        model.put("sortUrls", liensTri(page, size, search, false));
+
+        model.put("keyset", false);
+    }
+
+    /**
+     * Numéros des pages proposées dans la liste déroulante de la pagination : la première, la dernière et
+     * les {@link #PAGES_AUTOUR} pages de part et d'autre de la page courante
+     *
+     * @param page       La page courante, à partir de 0
+     * @param totalPages Le nombre total de pages
+     * @return Les numéros des pages, dans l'ordre
+     */
+    static List<Integer> pagesProposees(int page, int totalPages) {
+        int debut = Math.max(0, page - PAGES_AUTOUR);
+        int fin = Math.min(totalPages - 1, page + PAGES_AUTOUR);
+        List<Integer> pages = new ArrayList<>(Math.max(0, fin - debut) + 3);
+        if (debut > 0) {
+            pages.add(0);
+        }
+        for (int i = debut; i <= fin; i++) {
+            pages.add(i);
+        }
+        if (fin < totalPages - 1) {
+            pages.add(totalPages - 1);
+        }
+        return pages;
+    }
+
+    private static Map<String, Object> parametresLien(Integer size, String sortProperty, String sortDirection) {
+        Map<String, Object> parametres = new LinkedHashMap<>();
+        parametres.put("size", size);
+        parametres.put("sortDirection", sortDirection);
+        parametres.put("sortProperty", sortProperty);
+        return parametres;
+    }
+
+    /**
+     * Lien vers une autre page de la liste
+     *
+     * @param nom        Le paramètre de position (page, after ou before)
+     * @param valeur     Sa valeur
+     * @param parametres Les autres paramètres de la liste (taille, tri, recherche)
+     */
+    private static String lienListe(String nom, Object valeur, Map<String, Object> parametres) {
+        Map<String, Object> valeurs = new LinkedHashMap<>();
+        valeurs.put(nom, valeur);
+        valeurs.putAll(parametres);
+        UriComponentsBuilder builder = UriComponentsBuilder.fromPath("/");
+        valeurs.keySet().forEach(parametre -> builder.queryParam(parametre, "{" + parametre + "}"));
+        //Les valeurs passées en variables sont entièrement encodées, y compris un + ou un & dans la recherche
+        return builder.encode().buildAndExpand(valeurs).toUriString();
+    }
+
+    /**
+     * Liens des en-têtes de colonnes (fragment colHeader de tab.html) : tri croissant et décroissant sur chaque
+     * propriété, en gardant la page, la recherche, la taille et le mode de pagination
+     *
+     * @return Les liens, par propriété puis par sens de tri (ASC ou DESC)
+     */
+    private static Map<String, Map<String, String>> liensTri(Integer page, Integer size, String search, boolean keyset) {
+        Map<String, Map<String, String>> liens = new HashMap<>();
+        for (String propriete : communeObjectFieldName) {
+            Map<String, String> liensPropriete = new HashMap<>();
+            for (String direction : List.of("ASC", "DESC")) {
+                Map<String, Object> parametres = new LinkedHashMap<>();
+                parametres.put("search", search);
+                parametres.putAll(parametresLien(size, propriete, direction));
+                if (keyset) {
+                    parametres.put("keyset", true);
+                }
+                liensPropriete.put(direction, lienListe("page", page, parametres));
+            }
+            liens.put(propriete, liensPropriete);
+        }
+        return liens;
+    }
+
+    /**
+     * Page de résultats d'une recherche dans l'index, triés par pertinence si aucun tri n'est demandé
+     */
+    private Page<Commune> rechercheCommunes(String search, Integer page, Integer size, String sortProperty, String sortDirection) {
+        boolean parPertinence = sortProperty == null || sortProperty.isEmpty();
+        List<Commune> resultats = communeSearchIndex.search(search);
+        checkParametersValidity(resultats.size(), size, page, sortDirection, parPertinence ? "codeInsee" : sortProperty);
+
+        PageRequest pageRequest = PageRequest.of(page, size);
+        if (!parPertinence) {
+            Sort.Direction direction = Sort.Direction.fromString(sortDirection);
+            Comparator<Commune> comparateur = comparateurs.get(sortProperty).thenComparing(Commune::getCodeInsee);
+            resultats.sort(direction.isAscending() ? comparateur : comparateur.reversed());
+            pageRequest = PageRequest.of(page, size, direction, sortProperty);
+        }
+        int debut = (int) Math.min(pageRequest.getOffset(), resultats.size());
+        int fin = Math.min(debut + size, resultats.size());
+        return new PageImpl<>(resultats.subList(debut, fin), pageRequest, resultats.size());
+    }
+
+    /**
+     * Liste des communes paginée par curseur : after (ou before) contient la position de la dernière
+     * (ou de la première) commune affichée, ce qui évite le OFFSET et la requête de comptage.
+     */
+    private void listeCommunesKeyset(Integer size,
+                                     String sortProperty,
+                                     String sortDirection,
+                                     String after,
+                                     String before,
+                                     final ModelMap model) {
+        checkParametersValidity(Long.MAX_VALUE, size, 0, sortDirection, sortProperty);
+
+        boolean backward = after == null && before != null;
+        CommuneCursor cursor = backward ? CommuneCursor.parse(before) : after != null ? CommuneCursor.parse(after) : null;
+        Slice<Commune> communes = communeRepository.findSlice(sortProperty, Sort.Direction.fromString(sortDirection), cursor, backward, size);
+
+        CommuneCursor previousCursor = null;
+        CommuneCursor nextCursor = null;
+        if (communes.hasContent()) {
+            List<Commune> content = communes.getContent();
+            //hasNext indique s'il reste des communes dans le sens du parcours
+            if (backward ? communes.hasNext() : cursor != null) {
+                previousCursor = CommuneCursor.of(content.get(0), sortProperty);
+            }
+            if (backward || communes.hasNext()) {
+                nextCursor = CommuneCursor.of(content.get(content.size() - 1), sortProperty);
+            }
+        }
+
+        Map<String, Object> parametres = parametresLien(size, sortProperty, sortDirection);
+        model.put("communes", communes);
+        model.put("keyset", true);
+        model.put("previousUrl", previousCursor == null ? null : lienListe("before", previousCursor, parametres));
+        model.put("nextUrl", nextCursor == null ? null : lienListe("after", nextCursor, parametres));
+        model.put("sortUrls", liensTri(0, size, "", true));
+        model.put("pageSizes", Arrays.asList("5", "10", "20", "50", "100"));
+        model.put("page", 0);
+        model.put("search", "");
+        model.put("size", size);
+        model.put("sortProperty", sortProperty);
+        model.put("sortDirection", sortDirection);
     }
 
     private void checkParametersValidity(
@@ -0,0 +1,66 @@
+package com.ipiecoles.communes.web.controller;
+
+import com.ipiecoles.communes.web.service.CommuneDataVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.support.RequestContextUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Requêtes conditionnelles sur les pages HTML des communes. L'ETag d'une page est calculé à partir de tout ce
+ * dont dépend son rendu : la génération des données, l'URL, l'utilisateur connecté et ses rôles, et le jeton
+ * CSRF présent dans les formulaires. Un navigateur qui renvoie cet ETag reçoit une 304 avant tout appel au
+ * repository et tout rendu de template.
+ */
+@Component
+public class PageETags {
+
+    @Autowired
+    private CommuneDataVersion communeDataVersion;
+
+    /**
+     * Ajoute l'ETag et l'en-tête Cache-Control à la réponse, et vérifie l'en-tête If-None-Match de la requête
+     *
+     * @return true si la page n'a pas changé : la réponse 304 est prête et le contrôleur doit renvoyer null
+     */
+    public boolean checkNotModified(HttpServletRequest request, HttpServletResponse response) {
+        Map<String, ?> flashAttributes = RequestContextUtils.getInputFlashMap(request);
+        if (flashAttributes != null && !flashAttributes.isEmpty()) {
+            //Message affiché une seule fois après une redirection : la page ne doit pas être réutilisée
+            return false;
+        }
+
+        StringBuilder cle = new StringBuilder(communeDataVersion.getGeneration())
+                .append('|').append(request.getRequestURI())
+                .append('?').append(request.getQueryString());
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && !(authentication instanceof AnonymousAuthenticationToken)) {
+            cle.append('|').append(authentication.getName())
+                    .append('|').append(authentication.getAuthorities().stream()
+                            .map(GrantedAuthority::getAuthority).sorted().collect(Collectors.joining(",")));
+        }
+        CsrfToken csrfToken = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+        if (csrfToken != null) {
+            cle.append('|').append(csrfToken.getToken());
+        }
+
+        //Propre à l'utilisateur et revalidée à chaque affichage, à la place du no-store ajouté par Spring Security
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+        String etag = '"' + DigestUtils.md5DigestAsHex(cle.toString().getBytes(StandardCharsets.UTF_8)) + '"';
+        return new ServletWebRequest(request, response).checkNotModified(etag);
+    }
+}
@@ -6,6 +6,8 @@ import com.ipiecoles.communes.web.repository.RoleRepository;
 import com.ipiecoles.communes.web.repository.UserRepository;
 import com.ipiecoles.communes.web.service.MyUserDetailService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
@@ -33,6 +35,9 @@ public class UserController {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private UserCache userCache;
+
     @GetMapping("/login")
     public String login(@RequestParam(required = false) Boolean error,
                         ModelMap model) {
@@ -69,13 +74,22 @@ public class UserController {
             return "register";
         }
 
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        try {
+            user.setPassword(passwordEncoder.encode(user.getPassword()));
+        } catch (AuthenticationServiceException e) {
+            //Trop de calculs BCrypt en attente
+            model.addAttribute("type", "danger");
+            model.addAttribute("message", e.getMessage());
+            return "register";
+        }
         //Affecter le rôle USER...
         Role userRole = roleRepository.findByRole("ROLE_USER");
         user.setRoles(Set.of(userRole));
         //Gérer une validation par email... Ici valide par défaut
         user.setActive(true);
         userRepository.save(user);
+        //Aucune entrée en cache ne doit subsister pour ce nom d'utilisateur
+        userCache.removeUserFromCache(user.getUserName());
 
         attributes.addFlashAttribute("type", "success");
         attributes.addFlashAttribute("message", "Inscription réussie, vous pouvez vous connecter");
@@ -1,11 +1,22 @@
 package com.ipiecoles.communes.web.model;
 
+import com.ipiecoles.communes.web.config.HibernateCacheConfiguration;
+import com.ipiecoles.communes.web.util.GeoUtils;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.validation.constraints.*;
+import java.time.Instant;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfiguration.REGION_COMMUNE)
 public class Commune {
 
     public static final String REGEX_CODE_INSEE = "^[0-9]{1}[0-9AB]{1}[0-9]{3}$";
@@ -39,6 +50,11 @@ public class Commune {
     @NotNull
     private Double longitude;
 
+    /**
+     * Date du dernier enregistrement, tenue à jour par Hibernate et par l'import en masse
+     */
+    private Instant updatedAt;
+
     public Commune() {
     }
 
@@ -90,20 +106,22 @@ public class Commune {
         this.longitude = longitude;
     }
 
-    public Long getDistance(Double latitude, Double longitude) {
-        Double lat1 = Math.toRadians(latitude);
-        Double lng1 = Math.toRadians(longitude);
-        Double lat2 = Math.toRadians(this.latitude);
-        Double lng2 = Math.toRadians(this.longitude);
-
-        double dlon = lng2 - lng1;
-        double dlat = lat2 - lat1;
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
 
-        double a = Math.pow((Math.sin(dlat / 2)), 2) + Math.cos(lat1) * Math.cos(lat2) * Math.pow(Math.sin(dlon / 2), 2);
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    @PrePersist
+    @PreUpdate
+    void majUpdatedAt() {
+        updatedAt = Instant.now();
+    }
 
-        return Math.round(6371.009 * c);
+    public Long getDistance(Double latitude, Double longitude) {
+        return Math.round(GeoUtils.distanceKm(latitude, longitude, this.latitude, this.longitude));
     }
 
     @Override
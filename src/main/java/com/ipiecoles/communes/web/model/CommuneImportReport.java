@@ -0,0 +1,122 @@
+package com.ipiecoles.communes.web.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compte rendu d'un import de communes : nombre de lignes lues, enregistrées et rejetées, et détail des
+ * premières erreurs rencontrées
+ */
+public class CommuneImportReport {
+
+    private final int erreursMax;
+
+    private long lignesLues;
+
+    private long communesEnregistrees;
+
+    private long lignesRejetees;
+
+    private final List<Erreur> erreurs = new ArrayList<>();
+
+    private long dureeMs;
+
+    /**
+     * @param erreursMax Le nombre maximum d'erreurs détaillées, les suivantes étant seulement comptées
+     */
+    public CommuneImportReport(int erreursMax) {
+        this.erreursMax = erreursMax;
+    }
+
+    public void ligneLue() {
+        lignesLues++;
+    }
+
+    public void communesEnregistrees(int nombre) {
+        communesEnregistrees += nombre;
+    }
+
+    public void ligneRejetee(long ligne, String codeInsee, String message) {
+        lignesRejetees++;
+        if (erreurs.size() < erreursMax) {
+            erreurs.add(new Erreur(ligne, codeInsee, message));
+        }
+    }
+
+    public long getLignesLues() {
+        return lignesLues;
+    }
+
+    public long getCommunesEnregistrees() {
+        return communesEnregistrees;
+    }
+
+    public long getLignesRejetees() {
+        return lignesRejetees;
+    }
+
+    public List<Erreur> getErreurs() {
+        return erreurs;
+    }
+
+    /**
+     * @return true si des lignes ont été rejetées sans que leur erreur soit détaillée
+     */
+    public boolean isErreursTronquees() {
+        return lignesRejetees > erreurs.size();
+    }
+
+    public long getDureeMs() {
+        return dureeMs;
+    }
+
+    public void setDureeMs(long dureeMs) {
+        this.dureeMs = dureeMs;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CommuneImportReport{");
+        sb.append("lignesLues=").append(lignesLues);
+        sb.append(", communesEnregistrees=").append(communesEnregistrees);
+        sb.append(", lignesRejetees=").append(lignesRejetees);
+        sb.append(", dureeMs=").append(dureeMs);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public static class Erreur {
+
+        private final long ligne;
+
+        private final String codeInsee;
+
+        private final String message;
+
+        public Erreur(long ligne, String codeInsee, String message) {
+            this.ligne = ligne;
+            this.codeInsee = codeInsee;
+            this.message = message;
+        }
+
+        /**
+         * @return Le numéro de ligne dans le fichier (CSV, JSON par ligne) ou de la ligne où commence l'objet (tableau JSON)
+         */
+        public long getLigne() {
+            return ligne;
+        }
+
+        public String getCodeInsee() {
+            return codeInsee;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "ligne " + ligne + (codeInsee != null ? " (" + codeInsee + ")" : "") + " : " + message;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ipiecoles.communes.web.model;
+
+/**
+ * Commune trouvée lors d'une recherche de proximité, avec sa distance à la commune de référence
+ */
+public class CommuneProche {
+
+    private final Commune commune;
+
+    private final long distance;
+
+    public CommuneProche(Commune commune, long distance) {
+        this.commune = commune;
+        this.distance = distance;
+    }
+
+    public Commune getCommune() {
+        return commune;
+    }
+
+    /**
+     * @return La distance arrondie en kilomètres
+     */
+    public long getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CommuneProche{");
+        sb.append("commune=").append(commune);
+        sb.append(", distance=").append(distance);
+        sb.append('}');
+        return sb.toString();
+    }
+}
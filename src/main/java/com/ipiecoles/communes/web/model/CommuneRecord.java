@@ -0,0 +1,79 @@
+package com.ipiecoles.communes.web.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+/**
+ * Ligne de la table commune lue par R2DBC, voir CommuneReactiveRepository. Distincte de l'entité JPA
+ * {@link Commune}, dont Spring Data JPA revendique tous les repositories ; l'API renvoie des Commune.
+ */
+@Table("commune")
+public class CommuneRecord {
+
+    @Id
+    private final String codeInsee;
+
+    private final String nom;
+
+    private final String codePostal;
+
+    private final Double latitude;
+
+    private final Double longitude;
+
+    private final Instant updatedAt;
+
+    public CommuneRecord(String codeInsee, String nom, String codePostal, Double latitude, Double longitude, Instant updatedAt) {
+        this.codeInsee = codeInsee;
+        this.nom = nom;
+        this.codePostal = codePostal;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getCodeInsee() {
+        return codeInsee;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public String getCodePostal() {
+        return codePostal;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Commune toCommune() {
+        Commune commune = new Commune(codeInsee, nom, codePostal, latitude, longitude);
+        commune.setUpdatedAt(updatedAt);
+        return commune;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CommuneRecord{");
+        sb.append("codeInsee='").append(codeInsee).append('\'');
+        sb.append(", nom='").append(nom).append('\'');
+        sb.append(", codePostal='").append(codePostal).append('\'');
+        sb.append(", latitude=").append(latitude);
+        sb.append(", longitude=").append(longitude);
+        sb.append(", updatedAt=").append(updatedAt);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package com.ipiecoles.communes.web.model;
+
+/**
+ * Suggestion renvoyée par l'autocomplétion de la recherche, réduite aux champs affichés
+ */
+public class CommuneSuggestion {
+
+    private final String codeInsee;
+
+    private final String nom;
+
+    private final String codePostal;
+
+    public CommuneSuggestion(Commune commune) {
+        this.codeInsee = commune.getCodeInsee();
+        this.nom = commune.getNom();
+        this.codePostal = commune.getCodePostal();
+    }
+
+    public String getCodeInsee() {
+        return codeInsee;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public String getCodePostal() {
+        return codePostal;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CommuneSuggestion{");
+        sb.append("codeInsee='").append(codeInsee).append('\'');
+        sb.append(", nom='").append(nom).append('\'');
+        sb.append(", codePostal='").append(codePostal).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
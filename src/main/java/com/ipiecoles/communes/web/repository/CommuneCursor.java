@@ -0,0 +1,51 @@
+package com.ipiecoles.communes.web.repository;
+
+import com.ipiecoles.communes.web.model.Commune;
+import org.springframework.beans.BeanWrapperImpl;
+
+/**
+ * Position d'une commune dans un tri : la valeur de la propriété de tri et le code INSEE, qui départage
+ * les communes ayant la même valeur. Sérialisé sous la forme codeInsee:valeur pour être passé dans l'URL.
+ */
+public class CommuneCursor {
+
+    private static final char SEPARATEUR = ':';
+
+    private final String codeInsee;
+
+    private final String value;
+
+    public CommuneCursor(String codeInsee, String value) {
+        this.codeInsee = codeInsee;
+        this.value = value;
+    }
+
+    public static CommuneCursor of(Commune commune, String sortProperty) {
+        Object value = new BeanWrapperImpl(commune).getPropertyValue(sortProperty);
+        return new CommuneCursor(commune.getCodeInsee(), value == null ? "" : value.toString());
+    }
+
+    public static CommuneCursor parse(String token) {
+        int separateur = token.indexOf(SEPARATEUR);
+        if (separateur < 0) {
+            throw new IllegalArgumentException("La valeur du curseur n'est pas correcte");
+        }
+        return new CommuneCursor(token.substring(0, separateur), token.substring(separateur + 1));
+    }
+
+    public String getCodeInsee() {
+        return codeInsee;
+    }
+
+    /**
+     * @return La valeur de la propriété de tri, sous forme de chaîne
+     */
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return codeInsee + SEPARATEUR + value;
+    }
+}
@@ -0,0 +1,19 @@
+package com.ipiecoles.communes.web.repository;
+
+import com.ipiecoles.communes.web.model.CommuneRecord;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Lectures non bloquantes des communes par R2DBC (spring.r2dbc.*), pour l'API de CommuneReactiveApiController.
+ * Le cache d'Hibernate n'est pas utilisé : chaque appel interroge la base.
+ */
+public interface CommuneReactiveRepository extends R2dbcRepository<CommuneRecord, String> {
+
+    Flux<CommuneRecord> findAllBy(Pageable pageable);
+
+    Flux<CommuneRecord> findByNomContainingIgnoreCase(String search, Pageable pageable);
+
+    Flux<CommuneRecord> findByLatitudeBetweenAndLongitudeBetween(double latMin, double latMax, double longMin, double longMax);
+}
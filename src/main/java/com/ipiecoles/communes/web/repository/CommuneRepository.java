@@ -1,22 +1,70 @@
 package com.ipiecoles.communes.web.repository;
 
+import com.ipiecoles.communes.web.config.HibernateCacheConfiguration;
 import com.ipiecoles.communes.web.model.Commune;
-import org.springframework.data.domain.Page;
+import com.ipiecoles.communes.web.util.GeoUtils;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
-public interface CommuneRepository extends JpaRepository<Commune, String> {
+/**
+ * Les méthodes déclarées ici sont des lectures : en transaction lecture seule, elles peuvent être servies par un
+ * réplica (voir DataSourceRoutingConfiguration). save et delete gardent la transaction de SimpleJpaRepository.
+ */
+@Transactional(readOnly = true)
+public interface CommuneRepository extends JpaRepository<Commune, String>, CommuneRepositoryCustom {
 
     @Query("select count(c) from Commune c")
     long countCommune();
 
+    @Query("select max(c.updatedAt) from Commune c")
+    Instant findMaxUpdatedAt();
+
     List<Commune> findByLatitudeBetweenAndLongitudeBetween(Double latMin, Double latMax, Double longMin, Double longMax);
 
-    Page<Commune> findByNomContainingIgnoreCase(String search, Pageable pageable);
+    /**
+     * Communes dans un périmètre autour d'un point, de la plus proche à la plus lointaine (MySQL uniquement).
+     * Le rectangle englobant le périmètre est cherché dans l'index spatial de la colonne location, la distance
+     * n'est calculée que pour les communes qu'il contient.
+     *
+     * @param latitude      Latitude du centre, en degrés
+     * @param longitude     Longitude du centre, en degrés
+     * @param perimetreEnKm Le périmètre de recherche en kilomètre
+     */
+    default List<Commune> findWithinDistance(double latitude, double longitude, double perimetreEnKm) {
+        double deltaLatitude = perimetreEnKm / GeoUtils.DEGRE_LAT_KM;
+        double deltaLongitude = deltaLatitude / Math.cos(Math.toRadians(latitude));
+        return findWithinDistance(latitude, longitude, perimetreEnKm * 1000,
+                latitude - deltaLatitude, latitude + deltaLatitude, longitude - deltaLongitude, longitude + deltaLongitude);
+    }
+
+    @Query(value = "select c.code_insee, c.nom, c.code_postal, c.latitude, c.longitude, c.updated_at from commune c" +
+            " where MBRContains(ST_Envelope(LineString(Point(:longMin, :latMin), Point(:longMax, :latMax))), c.location)" +
+            " and ST_Distance_Sphere(c.location, Point(:longitude, :latitude)) <= :distanceEnMetres" +
+            " order by ST_Distance_Sphere(c.location, Point(:longitude, :latitude)), c.code_insee", nativeQuery = true)
+    List<Commune> findWithinDistance(@Param("latitude") double latitude, @Param("longitude") double longitude,
+                                     @Param("distanceEnMetres") double distanceEnMetres,
+                                     @Param("latMin") double latMin, @Param("latMax") double latMax,
+                                     @Param("longMin") double longMin, @Param("longMax") double longMax);
+
+    /**
+     * Page de communes sans requête de comptage, le total étant fourni par CommuneCountService.
+     * Le résultat est gardé dans le cache de requêtes d'Hibernate jusqu'à la prochaine écriture sur la table.
+     */
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = HibernateCacheConfiguration.REGION_REQUETES_COMMUNE)
+    })
+    Slice<Commune> findAllBy(Pageable pageable);
 }
 
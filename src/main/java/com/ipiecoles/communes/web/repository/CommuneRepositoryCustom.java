@@ -0,0 +1,22 @@
+package com.ipiecoles.communes.web.repository;
+
+import com.ipiecoles.communes.web.model.Commune;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+public interface CommuneRepositoryCustom {
+
+    /**
+     * Pagination par clé (keyset) : récupère les communes situées juste après (ou juste avant) le curseur
+     * dans l'ordre (sortProperty, codeInsee), sans OFFSET ni requête de comptage.
+     *
+     * @param sortProperty  Propriété de tri
+     * @param direction     Sens du tri
+     * @param cursor        Dernière commune vue, null pour la première page
+     * @param backward      true pour récupérer les communes précédant le curseur
+     * @param size          Nombre de communes à récupérer
+     * @return Les communes dans l'ordre d'affichage. {@link Slice#hasNext()} indique s'il reste des communes
+     * au-delà de celles renvoyées dans le sens du parcours (vers l'avant ou vers l'arrière)
+     */
+    Slice<Commune> findSlice(String sortProperty, Sort.Direction direction, CommuneCursor cursor, boolean backward, int size);
+}
@@ -0,0 +1,92 @@
+package com.ipiecoles.communes.web.repository;
+
+import com.ipiecoles.communes.web.model.Commune;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CommuneRepositoryCustomImpl implements CommuneRepositoryCustom {
+
+    private static final String CODE_INSEE = "codeInsee";
+
+    private final ConversionService conversionService = DefaultConversionService.getSharedInstance();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Slice<Commune> findSlice(String sortProperty, Sort.Direction direction, CommuneCursor cursor, boolean backward, int size) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Commune> query = cb.createQuery(Commune.class);
+        Root<Commune> commune = query.from(Commune.class);
+        Path<Comparable<Object>> sortPath = commune.get(sortProperty);
+        Path<Comparable<Object>> codeInseePath = commune.get(CODE_INSEE);
+
+        //Parcourir vers l'arrière revient à parcourir vers l'avant dans l'ordre inverse
+        boolean ascending = direction.isAscending() != backward;
+
+        if (cursor != null) {
+            Comparable<Object> codeInsee = convert(cursor.getCodeInsee(), codeInseePath);
+            Predicate apresCodeInsee = ascending ? cb.greaterThan(codeInseePath, codeInsee) : cb.lessThan(codeInseePath, codeInsee);
+            if (CODE_INSEE.equals(sortProperty)) {
+                query.where(apresCodeInsee);
+            } else {
+                Comparable<Object> value = convert(cursor.getValue(), sortPath);
+                //La première condition, redondante, donne à la base une borne sur l'index de la colonne triée
+                query.where(
+                        ascending ? cb.greaterThanOrEqualTo(sortPath, value) : cb.lessThanOrEqualTo(sortPath, value),
+                        cb.or(
+                                ascending ? cb.greaterThan(sortPath, value) : cb.lessThan(sortPath, value),
+                                apresCodeInsee));
+            }
+        }
+
+        List<Order> orders = new ArrayList<>();
+        if (!CODE_INSEE.equals(sortProperty)) {
+            orders.add(order(cb, sortPath, ascending));
+        }
+        orders.add(order(cb, codeInseePath, ascending));
+        query.orderBy(orders);
+
+        List<Commune> communes = entityManager.createQuery(query)
+                .setMaxResults(size + 1)
+                .getResultList();
+        boolean hasNext = communes.size() > size;
+        if (hasNext) {
+            communes = new ArrayList<>(communes.subList(0, size));
+        }
+        if (backward) {
+            Collections.reverse(communes);
+        }
+        return new SliceImpl<>(communes, PageRequest.of(0, size, direction, sortProperty), hasNext);
+    }
+
+    private static Order order(CriteriaBuilder cb, Expression<?> expression, boolean ascending) {
+        return ascending ? cb.asc(expression) : cb.desc(expression);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparable<Object> convert(String value, Path<?> path) {
+        try {
+            return (Comparable<Object>) conversionService.convert(value, path.getJavaType());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("La valeur du curseur n'est pas correcte", e);
+        }
+    }
+}
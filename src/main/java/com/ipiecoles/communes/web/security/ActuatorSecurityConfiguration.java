@@ -0,0 +1,46 @@
+package com.ipiecoles.communes.web.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+
+/**
+ * Chaîne de sécurité des endpoints de l'actuator, placée avant celle de l'application : authentification HTTP
+ * Basic, sans session, pour les clients sans formulaire comme Prometheus sur /actuator/prometheus. Les pages et
+ * l'API de l'application restent en connexion par formulaire uniquement (voir {@link WebSecurityConfiguration}).
+ */
+@Configuration
+@Order(1)
+public class ActuatorSecurityConfiguration extends WebSecurityConfigurerAdapter {
+
+    @Autowired
+    private DaoAuthenticationProvider authenticationProvider;
+
+    @Override
+    protected void configure(AuthenticationManagerBuilder auth) {
+        auth.authenticationProvider(authenticationProvider);
+    }
+
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http
+                .requestMatcher(EndpointRequest.toAnyEndpoint())
+                .authorizeRequests()
+                //L'état de santé (dont /actuator/health/readiness) est vérifié par le répartiteur de charge
+                .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                //Les métriques et les autres endpoints sont réservés aux administrateurs
+                .anyRequest().hasRole("ADMIN")
+                .and()
+                .httpBasic()
+                .and()
+                .sessionManagement()
+                .sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+    }
+}
@@ -0,0 +1,127 @@
+package com.ipiecoles.communes.web.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Encodeur BCrypt dont les calculs sont faits par un pool de threads dédié, de taille et de file d'attente bornées.
+ * Une rafale de connexions ne peut ainsi occuper qu'un nombre limité de cœurs : au-delà de la file d'attente,
+ * les demandes sont refusées immédiatement au lieu de ralentir tout le serveur.
+ * <p>
+ * Le coût BCrypt est configurable ; un mot de passe encodé avec un autre coût est ré-encodé à la connexion
+ * suivante (voir {@link #upgradeEncoding(String)}).
+ */
+@Component
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final BCryptPasswordEncoder delegate;
+
+    private final ThreadPoolExecutor executor;
+
+    private final long timeoutNanos;
+
+    private final Timer tempsEncode;
+
+    private final Timer tempsMatches;
+
+    private final Timer tempsAttente;
+
+    private final Counter refus;
+
+    public BoundedPasswordEncoder(@Value("${communes.security.bcrypt.strength:10}") int strength,
+                                  @Value("${communes.security.bcrypt.threads:0}") int threads,
+                                  @Value("${communes.security.bcrypt.queue-capacity:64}") int queueCapacity,
+                                  @Value("${communes.security.bcrypt.timeout:5s}") Duration timeout,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        //Par défaut, la moitié des cœurs pour laisser de la place aux autres requêtes
+        int nbThreads = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.executor = new ThreadPoolExecutor(nbThreads, nbThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("bcrypt-"));
+        this.timeoutNanos = timeout.toNanos();
+
+        this.tempsEncode = Timer.builder("communes.password.hash").tag("operation", "encode")
+                .description("Durée d'un calcul BCrypt").register(meterRegistry);
+        this.tempsMatches = Timer.builder("communes.password.hash").tag("operation", "matches")
+                .description("Durée d'un calcul BCrypt").register(meterRegistry);
+        this.tempsAttente = Timer.builder("communes.password.queue.wait")
+                .description("Attente d'un thread BCrypt libre").register(meterRegistry);
+        this.refus = Counter.builder("communes.password.rejected")
+                .description("Calculs BCrypt refusés, la file d'attente étant pleine").register(meterRegistry);
+        Gauge.builder("communes.password.queue", executor, e -> e.getQueue().size())
+                .description("Calculs BCrypt en attente").register(meterRegistry);
+        Gauge.builder("communes.password.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Calculs BCrypt en cours").register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> delegate.encode(rawPassword), tempsEncode);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> delegate.matches(rawPassword, encodedPassword), tempsMatches);
+    }
+
+    /**
+     * @return true si le mot de passe a été encodé avec un coût inférieur au coût configuré
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> T execute(Callable<T> calcul, Timer timer) {
+        long soumisLe = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                tempsAttente.record(System.nanoTime() - soumisLe, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(calcul);
+            });
+        } catch (RejectedExecutionException e) {
+            refus.increment();
+            throw new AuthenticationServiceException("Trop de demandes d'authentification simultanées, veuillez réessayer", e);
+        }
+        try {
+            return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Calcul du mot de passe interrompu", e);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new AuthenticationServiceException("Le calcul du mot de passe a pris trop de temps", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new AuthenticationServiceException("Erreur lors du calcul du mot de passe", e.getCause());
+        }
+    }
+}
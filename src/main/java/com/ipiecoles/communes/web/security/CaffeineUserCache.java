@@ -0,0 +1,51 @@
+package com.ipiecoles.communes.web.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Cache des utilisateurs chargés lors de l'authentification, borné en taille et en durée.
+ * <p>
+ * Le cache garde une copie des UserDetails : après l'authentification, Spring Security efface le mot de passe
+ * de l'objet renvoyé par le fournisseur, ce qui rendrait l'entrée inutilisable pour la connexion suivante.
+ */
+@Component
+public class CaffeineUserCache implements UserCache {
+
+    private final Cache<String, UserDetails> users;
+
+    public CaffeineUserCache(@Value("${communes.security.user-cache.max-size:1000}") long maxSize,
+                             @Value("${communes.security.user-cache.ttl:5m}") Duration ttl) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        UserDetails user = users.getIfPresent(username);
+        return user == null ? null : copie(user);
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        users.put(user.getUsername(), copie(user));
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        users.invalidate(username);
+    }
+
+    private static UserDetails copie(UserDetails user) {
+        return User.withUserDetails(user).build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.ipiecoles.communes.web.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Authentifie les requêtes du préchauffage (voir WarmupRunner) comme un utilisateur ROLE_USER, pour qu'elles
+ * passent par les pages réservées aux utilisateurs connectés. Un jeton aléatoire n'est valable que pendant le
+ * préchauffage, avant que l'application n'accepte du trafic ; il est attendu dans l'en-tête {@link #EN_TETE}.
+ * <p>
+ * L'authentification ne vaut que pour la requête : elle est retirée à la fin de celle-ci, et une session créée
+ * pendant la requête (contexte de sécurité enregistré à l'envoi de la réponse) est invalidée.
+ */
+public class WarmupAuthenticationFilter extends OncePerRequestFilter {
+
+    public static final String EN_TETE = "X-Warmup-Token";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private volatile byte[] jeton;
+
+    /**
+     * @return Un nouveau jeton, valable jusqu'à l'appel de {@link #fermer()}
+     */
+    public String ouvrir() {
+        byte[] octets = new byte[32];
+        RANDOM.nextBytes(octets);
+        String nouveauJeton = Base64.getUrlEncoder().withoutPadding().encodeToString(octets);
+        jeton = nouveauJeton.getBytes(StandardCharsets.US_ASCII);
+        return nouveauJeton;
+    }
+
+    public void fermer() {
+        jeton = null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        byte[] attendu = jeton;
+        String recu = request.getHeader(EN_TETE);
+        if (attendu == null || recu == null || !MessageDigest.isEqual(attendu, recu.getBytes(StandardCharsets.US_ASCII))) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("warmup", null,
+                AuthorityUtils.createAuthorityList("ROLE_USER")));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            SecurityContextHolder.clearContext();
+            HttpSession session = request.getSession(false);
+            if (session != null && session.isNew()) {
+                session.invalidate();
+            }
+        }
+    }
+}
@@ -2,17 +2,20 @@ package com.ipiecoles.communes.web.security;
 
 import com.ipiecoles.communes.web.service.MyUserDetailService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
@@ -22,26 +25,58 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
     @Autowired
     private MyUserDetailService userDetailsService;
 
+    @Autowired
+    private UserCache userCache;
+
+    /**
+     * BCrypt sur un pool de threads borné, voir {@link BoundedPasswordEncoder}
+     */
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth
-                .userDetailsService(userDetailsService)
-                .passwordEncoder(passwordEncoder());
+        auth.authenticationProvider(authenticationProvider());
+    }
+
+    @Bean
+    public DaoAuthenticationProvider authenticationProvider() {
+        DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider();
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+        //Ré-encode le mot de passe à la connexion si le coût BCrypt a changé
+        authenticationProvider.setUserDetailsPasswordService(userDetailsService);
+        //Evite de recharger l'utilisateur et ses rôles à chaque authentification
+        authenticationProvider.setUserCache(userCache);
+        return authenticationProvider;
+    }
+
+    @Bean
+    public WarmupAuthenticationFilter warmupAuthenticationFilter() {
+        return new WarmupAuthenticationFilter();
     }
 
+    /**
+     * Le filtre du préchauffage n'est appliqué que dans la chaîne de Spring Security, pas en plus par Tomcat
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public FilterRegistrationBean<WarmupAuthenticationFilter> warmupAuthenticationFilterRegistration(WarmupAuthenticationFilter warmupAuthenticationFilter) {
+        FilterRegistrationBean<WarmupAuthenticationFilter> registration = new FilterRegistrationBean<>(warmupAuthenticationFilter);
+        registration.setEnabled(false);
+        return registration;
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http
+                .addFilterBefore(warmupAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class)
                 .authorizeRequests()
                 //La page d'accueil / ...
-                .antMatchers("/", "/register", "/logout")
+                .antMatchers("/", "/register", "/logout", "/api/communes/suggest", "/api/communes/export")
                 //... est accessible à tous
                 .permitAll()
+                //L'API réactive sert les mêmes données que la page de détail, réservée aux utilisateurs connectés
+                .antMatchers("/api/reactive/communes/**").hasAnyRole("USER", "ADMIN")
                 //Toutes les autres requêtes...
                 .anyRequest()
                 //... demandent à être authentifié
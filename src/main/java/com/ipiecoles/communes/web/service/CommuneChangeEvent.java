@@ -0,0 +1,83 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.model.Commune;
+
+/**
+ * Evénement publié par les contrôleurs après chaque modification de la table des communes,
+ * afin que les structures en mémoire (index, caches...) restent synchronisées avec la base.
+ */
+public class CommuneChangeEvent {
+
+    public enum Type {
+        SAVED,
+        DELETED,
+        /**
+         * Modification d'un grand nombre de communes à la fois (import) : les structures en mémoire doivent être
+         * rechargées depuis la base
+         */
+        RELOADED
+    }
+
+    private final Type type;
+
+    private final String codeInsee;
+
+    private final Commune commune;
+
+    private final boolean created;
+
+    private CommuneChangeEvent(Type type, String codeInsee, Commune commune, boolean created) {
+        this.type = type;
+        this.codeInsee = codeInsee;
+        this.commune = commune;
+        this.created = created;
+    }
+
+    /**
+     * @param commune La commune enregistrée
+     * @param created true si la commune n'existait pas avant l'enregistrement
+     */
+    public static CommuneChangeEvent saved(Commune commune, boolean created) {
+        return new CommuneChangeEvent(Type.SAVED, commune.getCodeInsee(), commune, created);
+    }
+
+    public static CommuneChangeEvent deleted(String codeInsee) {
+        return new CommuneChangeEvent(Type.DELETED, codeInsee, null, false);
+    }
+
+    public static CommuneChangeEvent reloaded() {
+        return new CommuneChangeEvent(Type.RELOADED, null, null, false);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return Le code INSEE de la commune modifiée, null dans le cas d'un rechargement
+     */
+    public String getCodeInsee() {
+        return codeInsee;
+    }
+
+    /**
+     * @return La commune enregistrée, null dans le cas d'une suppression
+     */
+    public Commune getCommune() {
+        return commune;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CommuneChangeEvent{");
+        sb.append("type=").append(type);
+        sb.append(", codeInsee='").append(codeInsee).append('\'');
+        sb.append(", created=").append(created);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nombre de communes gardé en mémoire : le total est compté au démarrage puis tenu à jour à chaque enregistrement
+ * ou suppression. Il est lu par la barre de navigation de chaque page, donc sans verrou ni requête. Le total est
+ * tout de même recompté toutes les communes.count.refresh, en tâche de fond, pour prendre en compte les
+ * modifications faites en dehors de cette instance de l'application.
+ */
+@Service
+public class CommuneCountService {
+
+    /**
+     * communes.count.refresh en millisecondes, @Scheduled n'acceptant pas les durées du type 5m
+     */
+    private static final String REFRESH_MS = "#{T(org.springframework.boot.convert.DurationStyle)"
+            + ".detectAndParse('${communes.count.refresh:5m}').toMillis()}";
+
+    private final AtomicLong total = new AtomicLong();
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    /**
+     * @return Le nombre total de communes
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * Recompte les communes en base ; l'affichage des pages n'attend jamais ce comptage
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = REFRESH_MS, initialDelayString = REFRESH_MS)
+    public void rafraichir() {
+        total.set(communeRepository.countCommune());
+    }
+
+    @EventListener
+    public void onCommuneChange(CommuneChangeEvent event) {
+        if (event.getType() == CommuneChangeEvent.Type.RELOADED) {
+            //Recompté par le thread de l'import, pas par celui d'une page
+            rafraichir();
+        } else if (event.getType() == CommuneChangeEvent.Type.DELETED) {
+            total.decrementAndGet();
+        } else if (event.isCreated()) {
+            total.incrementAndGet();
+        }
+    }
+}
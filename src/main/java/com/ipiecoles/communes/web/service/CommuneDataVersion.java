@@ -0,0 +1,107 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Génération du jeu de données des communes, qui change dès qu'une commune est enregistrée ou supprimée. Elle sert
+ * à construire les ETag des pages et les clés du cache de fragments, et se lit donc sans verrou ni requête.
+ * <p>
+ * Elle est calculée à partir des données seules : date de modification la plus récente et nombre de communes,
+ * relus toutes les communes.etag.refresh, et empreinte des templates, qui change d'un déploiement à l'autre. Toutes
+ * les instances derrière le répartiteur de charge donnent donc le même ETag pour une même page. Un
+ * {@link CommuneChangeEvent} change tout de suite la génération de l'instance qui a fait la modification, sans
+ * attendre la relecture : le compteur de modifications locales est retiré dès que la relecture voit les données
+ * changer.
+ */
+@Service
+public class CommuneDataVersion {
+
+    /**
+     * communes.etag.refresh en millisecondes, @Scheduled n'acceptant pas les durées du type 10s
+     */
+    private static final String REFRESH_MS = "#{T(org.springframework.boot.convert.DurationStyle)"
+            + ".detectAndParse('${communes.etag.refresh:10s}').toMillis()}";
+
+    private final String versionTemplates = empreinteTemplates();
+
+    private final AtomicReference<Generation> generation = new AtomicReference<>();
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    /**
+     * @return La génération courante du jeu de données, différente après toute modification
+     */
+    public String getGeneration() {
+        return generation.get().valeur;
+    }
+
+    /**
+     * Relit la version des données en base ; l'appel des pages n'attend jamais cette relecture
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = REFRESH_MS, initialDelayString = REFRESH_MS)
+    public void rafraichir() {
+        Generation avant = generation.get();
+        Instant derniereModification = communeRepository.findMaxUpdatedAt();
+        String versionBase = (derniereModification == null ? 0 : derniereModification.toEpochMilli()) + "."
+                + communeRepository.countCommune() + "." + versionTemplates;
+        long changementsVus = avant == null ? 0 : avant.changementsLocaux;
+        //Les modifications arrivées pendant la relecture restent comptées
+        generation.updateAndGet(g -> g != null && g.versionBase.equals(versionBase) ? g
+                : new Generation(versionBase, g == null ? 0 : g.changementsLocaux - changementsVus));
+    }
+
+    @EventListener
+    public void onCommuneChange(CommuneChangeEvent event) {
+        generation.updateAndGet(g -> new Generation(g.versionBase, g.changementsLocaux + 1));
+    }
+
+    private static String empreinteTemplates() {
+        try {
+            Resource[] templates = new PathMatchingResourcePatternResolver().getResources("classpath:/templates/**/*.html");
+            Arrays.sort(templates, Comparator.comparing(Resource::getFilename));
+            ByteArrayOutputStream contenus = new ByteArrayOutputStream();
+            for (Resource template : templates) {
+                try (InputStream contenu = template.getInputStream()) {
+                    contenu.transferTo(contenus);
+                }
+            }
+            return DigestUtils.md5DigestAsHex(contenus.toByteArray()).substring(0, 8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class Generation {
+
+        private final String versionBase;
+
+        private final long changementsLocaux;
+
+        private final String valeur;
+
+        private Generation(String versionBase, long changementsLocaux) {
+            this.versionBase = versionBase;
+            this.changementsLocaux = changementsLocaux;
+            this.valeur = changementsLocaux == 0 ? versionBase : versionBase + "+" + changementsLocaux;
+        }
+    }
+}
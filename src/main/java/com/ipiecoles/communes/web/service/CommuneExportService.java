@@ -0,0 +1,170 @@
+package com.ipiecoles.communes.web.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ipiecoles.communes.web.model.Commune;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Export de la table des communes écrit au fil de l'eau dans un flux, sans construire de page ni d'entité :
+ * la table complète est lue par un curseur JDBC en avant seulement, les résultats d'une recherche viennent
+ * de {@link CommuneSearchIndex}. La mémoire utilisée ne dépend pas du nombre de communes exportées.
+ */
+@Service
+public class CommuneExportService {
+
+    public enum Format {
+        /**
+         * CSV séparé par des virgules, avec les mêmes colonnes que l'import
+         */
+        CSV,
+        /**
+         * Un objet JSON par ligne
+         */
+        NDJSON
+    }
+
+    private static final String SELECT_COMMUNES = "SELECT code_insee, nom, code_postal, latitude, longitude FROM commune ORDER BY code_insee";
+
+    /**
+     * Nombre de lignes lues à la fois par le curseur, hors MySQL qui envoie les lignes une à une
+     */
+    private static final int TAILLE_FETCH = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CommuneSearchIndex communeSearchIndex;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Ecrit les communes dans le flux : toutes, par code INSEE, ou celles correspondant à la recherche, par
+     * pertinence comme sur la page d'accueil. Le flux n'est pas fermé.
+     *
+     * @param search La recherche sur le nom, vide pour exporter toute la table
+     * @param format Le format d'export
+     * @param flux   Le flux dans lequel écrire, en UTF-8
+     */
+    @Transactional(readOnly = true)
+    public void exporter(String search, Format format, OutputStream flux) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(flux, StandardCharsets.UTF_8));
+        Ecrivain ecrivain = format == Format.CSV ? new EcrivainCsv(writer) : new EcrivainNdjson(writer);
+        if (search == null || search.isEmpty()) {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(SELECT_COMMUNES, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                //Sans cette valeur, le pilote MySQL charge tout le résultat en mémoire avant de rendre la main
+                ps.setFetchSize("MySQL".equalsIgnoreCase(con.getMetaData().getDatabaseProductName()) ? Integer.MIN_VALUE : TAILLE_FETCH);
+                return ps;
+            }, rs -> {
+                try {
+                    ecrivain.ecrire(rs.getString(1), rs.getString(2), rs.getString(3),
+                            rs.getObject(4, Double.class), rs.getObject(5, Double.class));
+                } catch (IOException e) {
+                    //Client déconnecté : la lecture du curseur est interrompue
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } else {
+            for (Commune commune : communeSearchIndex.search(search)) {
+                ecrivain.ecrire(commune.getCodeInsee(), commune.getNom(), commune.getCodePostal(),
+                        commune.getLatitude(), commune.getLongitude());
+            }
+        }
+        ecrivain.terminer();
+    }
+
+    private interface Ecrivain {
+
+        void ecrire(String codeInsee, String nom, String codePostal, Double latitude, Double longitude) throws IOException;
+
+        void terminer() throws IOException;
+    }
+
+    private static class EcrivainCsv implements Ecrivain {
+
+        private final Writer writer;
+
+        EcrivainCsv(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write("codeInsee,nom,codePostal,latitude,longitude\n");
+        }
+
+        @Override
+        public void ecrire(String codeInsee, String nom, String codePostal, Double latitude, Double longitude) throws IOException {
+            writer.write(champ(codeInsee));
+            writer.write(',');
+            writer.write(champ(nom));
+            writer.write(',');
+            writer.write(champ(codePostal));
+            writer.write(',');
+            writer.write(latitude == null ? "" : latitude.toString());
+            writer.write(',');
+            writer.write(longitude == null ? "" : longitude.toString());
+            writer.write('\n');
+        }
+
+        @Override
+        public void terminer() throws IOException {
+            writer.flush();
+        }
+
+        private static String champ(String valeur) {
+            if (valeur == null) {
+                return "";
+            }
+            if (valeur.indexOf(',') < 0 && valeur.indexOf('"') < 0 && valeur.indexOf('\n') < 0) {
+                return valeur;
+            }
+            return '"' + valeur.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    private class EcrivainNdjson implements Ecrivain {
+
+        private final JsonGenerator generator;
+
+        private boolean vide = true;
+
+        EcrivainNdjson(Writer writer) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(writer);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+        }
+
+        @Override
+        public void ecrire(String codeInsee, String nom, String codePostal, Double latitude, Double longitude) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("codeInsee", codeInsee);
+            generator.writeStringField("nom", nom);
+            generator.writeStringField("codePostal", codePostal);
+            generator.writeObjectField("latitude", latitude);
+            generator.writeObjectField("longitude", longitude);
+            generator.writeEndObject();
+            vide = false;
+        }
+
+        @Override
+        public void terminer() throws IOException {
+            if (!vide) {
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.model.CommuneImportReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Import de communes en ligne de commande, sans démarrer le serveur web :
+ * <pre>
+ * java -jar web.jar --import-communes=communes.csv --spring.main.web-application-type=none
+ * </pre>
+ * Le format est déduit de l'extension du fichier (.csv, sinon JSON). L'application s'arrête à la fin de l'import,
+ * avec le code retour 0 si toutes les lignes ont été enregistrées, 1 sinon.
+ */
+@Component
+public class CommuneImportRunner implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommuneImportRunner.class);
+
+    public static final String OPTION_IMPORT = "import-communes";
+
+    @Autowired
+    private CommuneImportService communeImportService;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!args.containsOption(OPTION_IMPORT)) {
+            return;
+        }
+        Path fichier = Path.of(args.getOptionValues(OPTION_IMPORT).get(0));
+        CommuneImportService.Format format = fichier.getFileName().toString().toLowerCase().endsWith(".csv")
+                ? CommuneImportService.Format.CSV : CommuneImportService.Format.JSON;
+        LOGGER.info("Import des communes du fichier {} ({})", fichier, format);
+
+        CommuneImportReport rapport;
+        try (InputStream contenu = Files.newInputStream(fichier)) {
+            rapport = communeImportService.importer(contenu, format);
+        }
+        for (CommuneImportReport.Erreur erreur : rapport.getErreurs()) {
+            LOGGER.warn("Ligne rejetée {}", erreur);
+        }
+        if (rapport.isErreursTronquees()) {
+            LOGGER.warn("{} autres lignes rejetées", rapport.getLignesRejetees() - rapport.getErreurs().size());
+        }
+        int codeRetour = rapport.getLignesRejetees() == 0 ? 0 : 1;
+        System.exit(SpringApplication.exit(context, () -> codeRetour));
+    }
+}
@@ -0,0 +1,367 @@
+package com.ipiecoles.communes.web.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneImportReport;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Import en masse de communes depuis un fichier CSV ou JSON, lu au fil de l'eau : seul un lot de communes est
+ * gardé en mémoire, quelle que soit la taille du fichier. Chaque ligne est validée avec les contraintes de
+ * {@link Commune}, puis les communes valides sont enregistrées par lots JDBC, en une transaction par lot : une
+ * commune existante est mise à jour, une nouvelle commune est créée.
+ * <p>
+ * Les écritures ne passant pas par Hibernate, ses caches sont vidés à la fin de l'import et un événement
+ * {@link CommuneChangeEvent.Type#RELOADED} fait recharger les index en mémoire.
+ */
+@Service
+public class CommuneImportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommuneImportService.class);
+
+    public enum Format {
+        /**
+         * CSV avec une ligne d'en-tête, séparé par des virgules ou des points-virgules
+         */
+        CSV,
+        /**
+         * Tableau JSON ou objets JSON successifs (un par ligne)
+         */
+        JSON
+    }
+
+    private static final String UPSERT_MYSQL = "INSERT INTO commune (code_insee, nom, code_postal, latitude, longitude, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE nom = VALUES(nom), code_postal = VALUES(code_postal), " +
+            "latitude = VALUES(latitude), longitude = VALUES(longitude), updated_at = VALUES(updated_at)";
+
+    private static final String UPSERT_H2 = "MERGE INTO commune (code_insee, nom, code_postal, latitude, longitude, updated_at) " +
+            "KEY (code_insee) VALUES (?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Nombre de lots enregistrés entre deux messages de progression
+     */
+    private static final int LOTS_PAR_PROGRESSION = 10;
+
+    @Value("${communes.import.batch-size:1000}")
+    private int tailleLot;
+
+    @Value("${communes.import.max-errors:1000}")
+    private int erreursMax;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private volatile String upsert;
+
+    /**
+     * Importe les communes d'un fichier. Les lots enregistrés avant une erreur de lecture du fichier le restent.
+     *
+     * @param contenu Le contenu du fichier, en UTF-8 pour le CSV
+     * @param format  Le format du fichier
+     * @return Le compte rendu de l'import
+     * @throws IllegalArgumentException si l'en-tête CSV est incomplet ou si le JSON est mal formé
+     */
+    public CommuneImportReport importer(InputStream contenu, Format format) throws IOException {
+        long debut = System.currentTimeMillis();
+        CommuneImportReport rapport = new CommuneImportReport(erreursMax);
+        List<Commune> lot = new ArrayList<>(tailleLot);
+        try {
+            if (format == Format.CSV) {
+                lireCsv(contenu, rapport, lot);
+            } else {
+                lireJson(contenu, rapport, lot);
+            }
+            enregistrer(lot, rapport);
+        } finally {
+            rapport.setDureeMs(System.currentTimeMillis() - debut);
+            if (rapport.getCommunesEnregistrees() > 0) {
+                Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+                cache.evictEntityData(Commune.class);
+                cache.evictQueryRegions();
+                eventPublisher.publishEvent(CommuneChangeEvent.reloaded());
+            }
+        }
+        LOGGER.info("Import terminé : {}", rapport);
+        return rapport;
+    }
+
+    private void lireCsv(InputStream contenu, CommuneImportReport rapport, List<Commune> lot) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(contenu, StandardCharsets.UTF_8));
+        try {
+            String entete = reader.readLine();
+            if (entete == null) {
+                return;
+            }
+            //Marque d'ordre des octets ajoutée par certains tableurs
+            if (entete.startsWith("\uFEFF")) {
+                entete = entete.substring(1);
+            }
+            char separateur = entete.indexOf(';') >= 0 ? ';' : ',';
+            ColonnesCsv colonnes = new ColonnesCsv(decouper(entete, separateur));
+            long numero = 1;
+            String ligne;
+            while ((ligne = reader.readLine()) != null) {
+                numero++;
+                if (ligne.isBlank()) {
+                    continue;
+                }
+                List<String> valeurs = decouper(ligne, separateur);
+                Commune commune;
+                try {
+                    commune = colonnes.commune(valeurs);
+                } catch (IllegalArgumentException e) {
+                    rapport.ligneLue();
+                    rapport.ligneRejetee(numero, colonnes.valeur(valeurs, colonnes.codeInsee), e.getMessage());
+                    continue;
+                }
+                traiter(numero, commune, rapport, lot);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Erreur de lecture du fichier CSV : " + e.getMessage(), e);
+        }
+    }
+
+    private void lireJson(InputStream contenu, CommuneImportReport rapport, List<Commune> lot) throws IOException {
+        try (MappingIterator<Commune> communes = objectMapper.readerFor(Commune.class).readValues(contenu)) {
+            while (communes.hasNextValue()) {
+                long numero = communes.getParser().getTokenLocation().getLineNr();
+                Commune commune;
+                try {
+                    commune = communes.nextValue();
+                } catch (JsonMappingException e) {
+                    //Valeur d'un mauvais type : seule la commune en cours est rejetée
+                    rapport.ligneLue();
+                    rapport.ligneRejetee(numero, null, e.getOriginalMessage());
+                    continue;
+                }
+                traiter(numero, commune, rapport, lot);
+            }
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("JSON mal formé ligne " + e.getLocation().getLineNr() + " : "
+                    + e.getOriginalMessage(), e);
+        }
+    }
+
+    private void traiter(long numero, Commune commune, CommuneImportReport rapport, List<Commune> lot) {
+        rapport.ligneLue();
+        Set<ConstraintViolation<Commune>> violations = validator.validate(commune);
+        if (!violations.isEmpty()) {
+            rapport.ligneRejetee(numero, commune.getCodeInsee(), violations.stream()
+                    .map(v -> v.getPropertyPath() + " : " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+            return;
+        }
+        lot.add(commune);
+        if (lot.size() >= tailleLot) {
+            enregistrer(lot, rapport);
+        }
+    }
+
+    private void enregistrer(List<Commune> lot, CommuneImportReport rapport) {
+        if (lot.isEmpty()) {
+            return;
+        }
+        String sql = upsert();
+        Timestamp maintenant = Timestamp.from(Instant.now());
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, lot, lot.size(), (ps, commune) -> {
+            ps.setString(1, commune.getCodeInsee());
+            ps.setString(2, commune.getNom());
+            ps.setString(3, commune.getCodePostal());
+            ps.setDouble(4, commune.getLatitude());
+            ps.setDouble(5, commune.getLongitude());
+            ps.setTimestamp(6, maintenant);
+        }));
+        long avant = rapport.getCommunesEnregistrees() / ((long) tailleLot * LOTS_PAR_PROGRESSION);
+        rapport.communesEnregistrees(lot.size());
+        if (rapport.getCommunesEnregistrees() / ((long) tailleLot * LOTS_PAR_PROGRESSION) > avant) {
+            LOGGER.info("Import en cours : {} lignes lues, {} communes enregistrées, {} lignes rejetées",
+                    rapport.getLignesLues(), rapport.getCommunesEnregistrees(), rapport.getLignesRejetees());
+        }
+        lot.clear();
+    }
+
+    /**
+     * @return La requête d'insertion ou de mise à jour propre à la base de données
+     */
+    private String upsert() {
+        if (upsert == null) {
+            String base = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+            if ("MySQL".equalsIgnoreCase(base) || "MariaDB".equalsIgnoreCase(base)) {
+                upsert = UPSERT_MYSQL;
+            } else if ("H2".equalsIgnoreCase(base)) {
+                upsert = UPSERT_H2;
+            } else {
+                throw new IllegalStateException("Import de communes non supporté pour la base " + base);
+            }
+        }
+        return upsert;
+    }
+
+    /**
+     * Découpe une ligne CSV ; un champ entre guillemets peut contenir le séparateur et des guillemets doublés,
+     * mais pas de retour à la ligne
+     */
+    static List<String> decouper(String ligne, char separateur) {
+        List<String> valeurs = new ArrayList<>();
+        StringBuilder valeur = new StringBuilder();
+        boolean entreGuillemets = false;
+        for (int i = 0; i < ligne.length(); i++) {
+            char c = ligne.charAt(i);
+            if (entreGuillemets) {
+                if (c != '"') {
+                    valeur.append(c);
+                } else if (i + 1 < ligne.length() && ligne.charAt(i + 1) == '"') {
+                    valeur.append('"');
+                    i++;
+                } else {
+                    entreGuillemets = false;
+                }
+            } else if (c == '"') {
+                entreGuillemets = true;
+            } else if (c == separateur) {
+                valeurs.add(valeur.toString());
+                valeur.setLength(0);
+            } else {
+                valeur.append(c);
+            }
+        }
+        valeurs.add(valeur.toString());
+        return valeurs;
+    }
+
+    /**
+     * Position des colonnes d'un fichier CSV, d'après les noms de l'en-tête. Les noms des propriétés de
+     * {@link Commune} sont reconnus, ainsi que ceux de la base officielle des codes postaux (Code_commune_INSEE,
+     * Nom_commune, Code_postal, coordonnees_gps).
+     */
+    private static class ColonnesCsv {
+
+        private int codeInsee = -1;
+
+        private int nom = -1;
+
+        private int codePostal = -1;
+
+        private int latitude = -1;
+
+        private int longitude = -1;
+
+        private int coordonnees = -1;
+
+        ColonnesCsv(List<String> entete) {
+            for (int i = 0; i < entete.size(); i++) {
+                switch (entete.get(i).replaceAll("[^A-Za-z]", "").toLowerCase(Locale.ROOT)) {
+                    case "codeinsee":
+                    case "codecommuneinsee":
+                        codeInsee = i;
+                        break;
+                    case "nom":
+                    case "nomcommune":
+                        nom = i;
+                        break;
+                    case "codepostal":
+                        codePostal = i;
+                        break;
+                    case "latitude":
+                        latitude = i;
+                        break;
+                    case "longitude":
+                        longitude = i;
+                        break;
+                    case "coordonneesgps":
+                        coordonnees = i;
+                        break;
+                    default:
+                        //Colonne ignorée
+                }
+            }
+            if (codeInsee < 0 || nom < 0 || codePostal < 0 || (coordonnees < 0 && (latitude < 0 || longitude < 0))) {
+                throw new IllegalArgumentException("L'en-tête CSV doit contenir les colonnes codeInsee, nom, codePostal, " +
+                        "latitude et longitude (ou coordonnees_gps)");
+            }
+        }
+
+        Commune commune(List<String> valeurs) {
+            Double lat;
+            Double lon;
+            if (latitude >= 0 && longitude >= 0) {
+                lat = nombre(valeur(valeurs, latitude));
+                lon = nombre(valeur(valeurs, longitude));
+            } else {
+                //"46.15, 4.92"
+                String gps = valeur(valeurs, coordonnees);
+                String[] latLon = gps == null ? new String[0] : gps.split(",");
+                if (gps != null && latLon.length != 2) {
+                    throw new IllegalArgumentException("Coordonnées GPS invalides : " + gps);
+                }
+                lat = gps == null ? null : nombre(latLon[0].trim());
+                lon = gps == null ? null : nombre(latLon[1].trim());
+            }
+            return new Commune(valeur(valeurs, codeInsee), valeur(valeurs, nom), valeur(valeurs, codePostal), lat, lon);
+        }
+
+        String valeur(List<String> valeurs, int colonne) {
+            if (colonne >= valeurs.size()) {
+                return null;
+            }
+            String valeur = valeurs.get(colonne).trim();
+            return valeur.isEmpty() ? null : valeur;
+        }
+
+        private static Double nombre(String valeur) {
+            if (valeur == null) {
+                return null;
+            }
+            try {
+                return Double.valueOf(valeur.replace(',', '.'));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Nombre invalide : " + valeur);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneProche;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Graphe des communes proches : pour chaque commune, la liste triée de ses voisines jusqu'à
+ * {@link #PERIMETRE_MAX_KM} km, calculée une fois pour toutes à partir de l'index spatial. Une page de détail
+ * n'a plus qu'à lire le début de cette liste, quel que soit le périmètre demandé.
+ * <p>
+ * Le graphe est construit pendant le préchauffage ({@link WarmupRunner}) ou, sans préchauffage, en tâche de fond au
+ * démarrage ; en attendant, les recherches passent par {@link CommuneSpatialIndex}. Lorsqu'une commune est
+ * enregistrée ou supprimée, seules les communes situées à moins de {@link #PERIMETRE_MAX_KM} km de son ancienne et
+ * de sa nouvelle position sont recalculées.
+ */
+@Service
+public class CommuneNeighborGraph {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommuneNeighborGraph.class);
+
+    /**
+     * Périmètre maximum proposé sur la page de détail d'une commune
+     */
+    public static final int PERIMETRE_MAX_KM = 20;
+
+    /**
+     * Compteur des communes renvoyées par les recherches de communes proches, tag source : detail pour la page de
+     * détail (fragments absents du cache seulement), api pour l'API réactive
+     */
+    public static final String COMMUNES_PROCHES_METRIQUE = "communes.nearby.results";
+
+    private final Map<String, NeighborList> voisinages = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("voisinage-"));
+
+    /**
+     * Faux tant que le graphe n'a pas été entièrement construit
+     */
+    private volatile boolean pret = false;
+
+    /**
+     * Une modification est arrivée pendant la construction : le graphe devra être reconstruit
+     */
+    private volatile boolean aReconstruire = false;
+
+    @Autowired
+    private CommuneSpatialIndex communeSpatialIndex;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        //Déjà construit si le préchauffage a eu lieu, voir WarmupRunner
+        if (!pret) {
+            executor.execute(this::rebuild);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return pret;
+    }
+
+    /**
+     * Reconstruit l'ensemble du graphe à partir de l'index spatial. Les recherches passent par l'index spatial
+     * pendant la construction.
+     */
+    public synchronized void rebuild() {
+        do {
+            aReconstruire = false;
+            pret = false;
+            long debut = System.currentTimeMillis();
+            voisinages.clear();
+            for (Commune commune : communeSpatialIndex.communes()) {
+                calculer(commune);
+            }
+            LOGGER.info("Graphe des communes proches construit pour {} communes en {} ms", voisinages.size(),
+                    System.currentTimeMillis() - debut);
+        } while (aReconstruire);
+        pret = true;
+        if (aReconstruire) {
+            //Modification arrivée entre la fin de la construction et le passage à l'état prêt
+            executor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Après l'index spatial, dont dépend le recalcul des voisinages
+     */
+    @EventListener
+    @Order(1)
+    public void onCommuneChange(CommuneChangeEvent event) {
+        if (event.getType() == CommuneChangeEvent.Type.RELOADED) {
+            //Les recherches passent par l'index spatial, déjà rechargé, le temps de reconstruire le graphe
+            pret = false;
+            aReconstruire = true;
+            executor.execute(this::rebuild);
+            return;
+        }
+        if (!pret) {
+            //La construction en cours a pu lire l'index avant cette modification
+            aReconstruire = true;
+            return;
+        }
+        synchronized (this) {
+            Set<String> aRecalculer = new HashSet<>();
+            NeighborList ancien = voisinages.remove(event.getCodeInsee());
+            if (ancien != null) {
+                //Le voisinage est symétrique : les anciennes voisines sont celles qui référencent la commune
+                for (Commune voisine : ancien.communes) {
+                    aRecalculer.add(voisine.getCodeInsee());
+                }
+            }
+            Commune commune = communeSpatialIndex.get(event.getCodeInsee());
+            if (commune != null) {
+                aRecalculer.add(commune.getCodeInsee());
+                for (Commune voisine : communeSpatialIndex.findNeighbors(commune, PERIMETRE_MAX_KM).communes) {
+                    aRecalculer.add(voisine.getCodeInsee());
+                }
+            }
+            for (String codeInsee : aRecalculer) {
+                //Les communes supprimées entre-temps ne sont plus dans l'index
+                Commune aJour = communeSpatialIndex.get(codeInsee);
+                if (aJour != null) {
+                    calculer(aJour);
+                }
+            }
+        }
+    }
+
+    /**
+     * Récupère les communes dans un périmètre autour d'une commune, en lisant le début de sa liste de voisines
+     *
+     * @param commune       La commune sur laquelle porte la recherche
+     * @param perimetreEnKm Le périmètre de recherche en kilomètre, au plus {@link #PERIMETRE_MAX_KM}
+     * @return La liste des communes triées de la plus proche à la plus lointaine
+     */
+    public List<CommuneProche> findCommunesProches(Commune commune, double perimetreEnKm) {
+        NeighborList voisinage = pret && perimetreEnKm <= PERIMETRE_MAX_KM ? voisinages.get(commune.getCodeInsee()) : null;
+        if (voisinage == null) {
+            return communeSpatialIndex.findCommunesProches(commune, perimetreEnKm);
+        }
+        //Même règle que l'index spatial : une commune à 10,4 km est dans un périmètre de 10 km
+        float distanceMax = (float) (perimetreEnKm + 0.5);
+        int fin = 0;
+        while (fin < voisinage.distances.length && voisinage.distances[fin] < distanceMax) {
+            fin++;
+        }
+        List<CommuneProche> communesProches = new ArrayList<>(fin);
+        for (int i = 0; i < fin; i++) {
+            communesProches.add(new CommuneProche(voisinage.communes[i], Math.round(voisinage.distances[i])));
+        }
+        return communesProches;
+    }
+
+    private void calculer(Commune commune) {
+        voisinages.put(commune.getCodeInsee(), communeSpatialIndex.findNeighbors(commune, PERIMETRE_MAX_KM));
+    }
+}
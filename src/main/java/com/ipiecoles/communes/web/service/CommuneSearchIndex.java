@@ -0,0 +1,409 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Index de recherche en mémoire sur le nom des communes. Les noms sont normalisés (minuscules, sans accents,
+ * tirets et apostrophes remplacés par des espaces) et découpés en trigrammes : une recherche ne vérifie que
+ * les communes contenant le trigramme le plus rare du texte recherché.
+ * <p>
+ * Les résultats sont classés par pertinence : nom identique, puis nom commençant par le texte recherché,
+ * puis mot du nom commençant par le texte recherché, puis nom contenant le texte recherché.
+ * <p>
+ * Les codes INSEE et les codes postaux sont gardés triés pour les suggestions par préfixe de code.
+ */
+@Service
+public class CommuneSearchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommuneSearchIndex.class);
+
+    private static final Pattern DIACRITIQUES = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private static final Pattern SEPARATEURS = Pattern.compile("[\\s\\-']+");
+
+    private static final Pattern DEBUT_DE_CODE = Pattern.compile("^[0-9][0-9AB]?[0-9]{0,3}$");
+
+    /**
+     * Renvoyé lorsqu'un trigramme du texte recherché n'apparaît dans aucun nom
+     */
+    private static final SlotList AUCUN = new SlotList();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TreeMap<String, Integer> slotsParCodeInsee = new TreeMap<>();
+
+    private final TreeMap<String, SlotList> slotsParCodePostal = new TreeMap<>();
+
+    private final Map<Long, SlotList> trigrammes = new HashMap<>();
+
+    private String[] noms = new String[0];
+
+    private String[] codesPostaux = new String[0];
+
+    private Commune[] communes = new Commune[0];
+
+    private int nbSlots = 0;
+
+    private int nbCommunes = 0;
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @PostConstruct
+    public void init() {
+        long debut = System.currentTimeMillis();
+        load(communeRepository.findAll());
+        LOGGER.info("Index de recherche chargé avec {} communes en {} ms", size(), System.currentTimeMillis() - debut);
+    }
+
+    /**
+     * Remplace le contenu de l'index par les communes passées en paramètre
+     *
+     * @param toutesLesCommunes Les communes à indexer
+     */
+    public void load(Iterable<Commune> toutesLesCommunes) {
+        lock.writeLock().lock();
+        try {
+            slotsParCodeInsee.clear();
+            slotsParCodePostal.clear();
+            trigrammes.clear();
+            noms = new String[0];
+            codesPostaux = new String[0];
+            communes = new Commune[0];
+            nbSlots = 0;
+            nbCommunes = 0;
+            for (Commune commune : toutesLesCommunes) {
+                doPut(commune);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ajoute une commune à l'index, ou la met à jour si son code INSEE est déjà indexé
+     *
+     * @param commune La commune à indexer
+     */
+    public void put(Commune commune) {
+        lock.writeLock().lock();
+        try {
+            doPut(commune);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retire une commune de l'index
+     *
+     * @param codeInsee Le code INSEE de la commune à retirer
+     */
+    public void remove(String codeInsee) {
+        lock.writeLock().lock();
+        try {
+            doRemove(codeInsee);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nbCommunes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onCommuneChange(CommuneChangeEvent event) {
+        if (event.getType() == CommuneChangeEvent.Type.SAVED) {
+            put(event.getCommune());
+        } else if (event.getType() == CommuneChangeEvent.Type.DELETED) {
+            remove(event.getCodeInsee());
+        } else {
+            init();
+        }
+    }
+
+    /**
+     * Recherche les communes dont le nom contient le texte recherché, sans tenir compte de la casse,
+     * des accents, des tirets et des apostrophes
+     *
+     * @param search Le texte recherché
+     * @return Les communes trouvées, de la plus pertinente à la moins pertinente
+     */
+    public List<Commune> search(String search) {
+        String recherche = normalize(search);
+        if (recherche.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int nbResultats = 0;
+        long[] resultats = new long[16];
+        lock.readLock().lock();
+        try {
+            SlotList candidats = recherche.length() < 3 ? null : trigrammeLePlusRare(recherche);
+            int nbCandidats = candidats == null ? nbSlots : candidats.size;
+            for (int i = 0; i < nbCandidats; i++) {
+                long resultat = resultat(candidats == null ? i : candidats.slots[i], recherche);
+                if (resultat < 0) {
+                    continue;
+                }
+                if (nbResultats == resultats.length) {
+                    resultats = Arrays.copyOf(resultats, nbResultats * 2);
+                }
+                resultats[nbResultats++] = resultat;
+            }
+
+            return Arrays.stream(resultats, 0, nbResultats).boxed()
+                    .sorted(ordreDesResultats())
+                    .map(resultat -> communes[resultat.intValue()])
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Suggestions pour l'autocomplétion : si le texte saisi est un début de code, les communes dont le code INSEE
+     * puis le code postal commence par ce texte, sinon les communes les plus pertinentes pour leur nom. Le parcours
+     * s'arrête à l'échéance donnée et renvoie alors les meilleures communes trouvées jusque-là.
+     *
+     * @param saisie   Le texte saisi
+     * @param limite   Le nombre maximum de suggestions
+     * @param echeance L'échéance au sens de {@link System#nanoTime()}
+     * @return Les suggestions, de la plus pertinente à la moins pertinente
+     */
+    public List<Commune> suggest(String saisie, int limite, long echeance) {
+        String code = saisie == null ? "" : saisie.trim().toUpperCase();
+        lock.readLock().lock();
+        try {
+            if (DEBUT_DE_CODE.matcher(code).matches()) {
+                return suggestParCode(code, limite, echeance);
+            }
+            String recherche = normalize(saisie);
+            if (recherche.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            //Tas des meilleurs résultats, le moins pertinent en tête pour être remplacé
+            Comparator<Long> ordre = ordreDesResultats();
+            PriorityQueue<Long> meilleurs = new PriorityQueue<>(limite + 1, ordre.reversed());
+            SlotList candidats = recherche.length() < 3 ? null : trigrammeLePlusRare(recherche);
+            int nbCandidats = candidats == null ? nbSlots : candidats.size;
+            for (int i = 0; i < nbCandidats; i++) {
+                if ((i & 0xFF) == 0xFF && System.nanoTime() - echeance > 0) {
+                    break;
+                }
+                long resultat = resultat(candidats == null ? i : candidats.slots[i], recherche);
+                if (resultat < 0 || (meilleurs.size() == limite && ordre.compare(resultat, meilleurs.peek()) >= 0)) {
+                    continue;
+                }
+                meilleurs.add(resultat);
+                if (meilleurs.size() > limite) {
+                    meilleurs.poll();
+                }
+            }
+            return meilleurs.stream()
+                    .sorted(ordre)
+                    .map(resultat -> communes[resultat.intValue()])
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Commune> suggestParCode(String code, int limite, long echeance) {
+        List<Commune> suggestions = new ArrayList<>(limite);
+        for (int slot : slotsParCodeInsee.subMap(code, code + Character.MAX_VALUE).values()) {
+            if (suggestions.size() == limite || System.nanoTime() - echeance > 0) {
+                return suggestions;
+            }
+            if (communes[slot] != null) {
+                suggestions.add(communes[slot]);
+            }
+        }
+        for (SlotList slots : slotsParCodePostal.subMap(code, code + Character.MAX_VALUE).values()) {
+            //Plusieurs communes partagent un même code postal : on les propose par ordre alphabétique
+            List<Commune> communesDuCodePostal = new ArrayList<>(slots.size);
+            for (int i = 0; i < slots.size; i++) {
+                communesDuCodePostal.add(communes[slots.slots[i]]);
+            }
+            communesDuCodePostal.sort(Comparator.comparing(Commune::getNom).thenComparing(Commune::getCodeInsee));
+            for (Commune commune : communesDuCodePostal) {
+                if (suggestions.size() == limite || System.nanoTime() - echeance > 0) {
+                    return suggestions;
+                }
+                if (!commune.getCodeInsee().startsWith(code)) {
+                    suggestions.add(commune);
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return La pertinence et le slot de la commune réunis dans un long, ou -1 si son nom ne contient pas le texte
+     * recherché
+     */
+    private long resultat(int slot, String recherche) {
+        String nom = noms[slot];
+        int position = nom == null ? -1 : nom.indexOf(recherche);
+        if (position < 0) {
+            return -1;
+        }
+        return ((long) pertinence(nom, recherche, position) << 32) | slot;
+    }
+
+    /**
+     * Tri par pertinence, puis par nom et code INSEE pour un ordre stable d'une page à l'autre
+     */
+    private Comparator<Long> ordreDesResultats() {
+        return Comparator.<Long>comparingLong(resultat -> resultat >>> 32)
+                .thenComparing(resultat -> noms[resultat.intValue()])
+                .thenComparing(resultat -> communes[resultat.intValue()].getCodeInsee());
+    }
+
+    /**
+     * Normalise un nom de commune ou un texte recherché : minuscules, sans accents, tirets et apostrophes
+     * remplacés par un espace
+     */
+    public static String normalize(String texte) {
+        if (texte == null) {
+            return "";
+        }
+        String sansAccents = DIACRITIQUES.matcher(Normalizer.normalize(texte, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATEURS.matcher(sansAccents.toLowerCase()).replaceAll(" ").trim();
+    }
+
+    /**
+     * 0 : nom identique, 1 : le nom commence par le texte recherché, 2 : un mot du nom commence par le
+     * texte recherché, 3 : le nom contient le texte recherché
+     */
+    private static int pertinence(String nom, String recherche, int position) {
+        if (position == 0) {
+            return nom.length() == recherche.length() ? 0 : 1;
+        }
+        return nom.charAt(position - 1) == ' ' || nom.contains(" " + recherche) ? 2 : 3;
+    }
+
+    private SlotList trigrammeLePlusRare(String recherche) {
+        SlotList plusRare = null;
+        for (int i = 0; i + 3 <= recherche.length(); i++) {
+            SlotList slots = trigrammes.get(trigramme(recherche, i));
+            if (slots == null) {
+                return AUCUN;
+            }
+            if (plusRare == null || slots.size < plusRare.size) {
+                plusRare = slots;
+            }
+        }
+        return plusRare;
+    }
+
+    private void doPut(Commune commune) {
+        Integer slot = slotsParCodeInsee.get(commune.getCodeInsee());
+        if (slot == null) {
+            slot = nouveauSlot();
+            slotsParCodeInsee.put(commune.getCodeInsee(), slot);
+        } else if (communes[slot] != null) {
+            retirerTrigrammes(slot);
+            retirerDuCodePostal(slot);
+            nbCommunes--;
+        }
+        noms[slot] = normalize(commune.getNom());
+        codesPostaux[slot] = commune.getCodePostal();
+        communes[slot] = commune;
+        if (codesPostaux[slot] != null) {
+            slotsParCodePostal.computeIfAbsent(codesPostaux[slot], k -> new SlotList()).add(slot);
+        }
+        String nom = noms[slot];
+        for (int i = 0; i + 3 <= nom.length(); i++) {
+            long trigramme = trigramme(nom, i);
+            SlotList slots = trigrammes.computeIfAbsent(trigramme, k -> new SlotList());
+            //Un même trigramme peut apparaître plusieurs fois dans un nom
+            if (!contientDeja(nom, i, trigramme)) {
+                slots.add(slot);
+            }
+        }
+        nbCommunes++;
+    }
+
+    private void doRemove(String codeInsee) {
+        Integer slot = slotsParCodeInsee.get(codeInsee);
+        if (slot != null && communes[slot] != null) {
+            retirerTrigrammes(slot);
+            retirerDuCodePostal(slot);
+            noms[slot] = null;
+            codesPostaux[slot] = null;
+            communes[slot] = null;
+            nbCommunes--;
+        }
+    }
+
+    private void retirerTrigrammes(int slot) {
+        String nom = noms[slot];
+        for (int i = 0; i + 3 <= nom.length(); i++) {
+            long trigramme = trigramme(nom, i);
+            SlotList slots = trigrammes.get(trigramme);
+            if (slots != null && slots.remove(slot) && slots.size == 0) {
+                trigrammes.remove(trigramme);
+            }
+        }
+    }
+
+    private void retirerDuCodePostal(int slot) {
+        String codePostal = codesPostaux[slot];
+        SlotList slots = codePostal == null ? null : slotsParCodePostal.get(codePostal);
+        if (slots != null && slots.remove(slot) && slots.size == 0) {
+            slotsParCodePostal.remove(codePostal);
+        }
+    }
+
+    private int nouveauSlot() {
+        if (nbSlots == communes.length) {
+            int capacite = Math.max(16, communes.length * 2);
+            noms = Arrays.copyOf(noms, capacite);
+            codesPostaux = Arrays.copyOf(codesPostaux, capacite);
+            communes = Arrays.copyOf(communes, capacite);
+        }
+        return nbSlots++;
+    }
+
+    private static boolean contientDeja(String nom, int position, long trigramme) {
+        for (int i = 0; i < position; i++) {
+            if (trigramme(nom, i) == trigramme) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long trigramme(String texte, int position) {
+        return ((long) texte.charAt(position) << 32) | ((long) texte.charAt(position + 1) << 16) | texte.charAt(position + 2);
+    }
+}
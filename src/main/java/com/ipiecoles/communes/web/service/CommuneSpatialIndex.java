@@ -0,0 +1,331 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneProche;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.util.GeoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index spatial en mémoire des communes : une grille de cellules de {@link #TAILLE_CELLULE} degrés
+ * dont chaque cellule référence les emplacements (slots) des communes qu'elle contient. Les coordonnées
+ * sont stockées dans des tableaux de doubles (degrés, radians et cosinus de la latitude précalculés) pour
+ * éviter de parcourir les entités lors du filtrage.
+ * <p>
+ * Un slot est attribué à un code INSEE pour toute la durée de vie de l'index : une commune supprimée
+ * laisse un slot vide, qui sera réutilisé si la commune est recréée.
+ */
+@Service
+public class CommuneSpatialIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommuneSpatialIndex.class);
+
+    /**
+     * Taille d'une cellule de la grille en degrés (environ 11 km en latitude)
+     */
+    static final double TAILLE_CELLULE = 0.1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> slotsParCodeInsee = new HashMap<>();
+
+    private final Map<Long, SlotList> cellules = new HashMap<>();
+
+    private double[] latitudes = new double[0];
+
+    private double[] longitudes = new double[0];
+
+    private double[] latitudesRad = new double[0];
+
+    private double[] longitudesRad = new double[0];
+
+    private double[] cosLatitudes = new double[0];
+
+    private Commune[] communes = new Commune[0];
+
+    private int nbSlots = 0;
+
+    private int nbCommunes = 0;
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @PostConstruct
+    public void init() {
+        long debut = System.currentTimeMillis();
+        load(communeRepository.findAll());
+        LOGGER.info("Index spatial chargé avec {} communes en {} ms", size(), System.currentTimeMillis() - debut);
+    }
+
+    /**
+     * Remplace le contenu de l'index par les communes passées en paramètre
+     *
+     * @param toutesLesCommunes Les communes à indexer
+     */
+    public void load(Iterable<Commune> toutesLesCommunes) {
+        lock.writeLock().lock();
+        try {
+            slotsParCodeInsee.clear();
+            cellules.clear();
+            latitudes = new double[0];
+            longitudes = new double[0];
+            latitudesRad = new double[0];
+            longitudesRad = new double[0];
+            cosLatitudes = new double[0];
+            communes = new Commune[0];
+            nbSlots = 0;
+            nbCommunes = 0;
+            for (Commune commune : toutesLesCommunes) {
+                doPut(commune);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ajoute une commune à l'index, ou la met à jour si son code INSEE est déjà indexé
+     *
+     * @param commune La commune à indexer
+     */
+    public void put(Commune commune) {
+        lock.writeLock().lock();
+        try {
+            doPut(commune);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retire une commune de l'index
+     *
+     * @param codeInsee Le code INSEE de la commune à retirer
+     */
+    public void remove(String codeInsee) {
+        lock.writeLock().lock();
+        try {
+            doRemove(codeInsee);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nbCommunes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener
+    @Order(0)
+    public void onCommuneChange(CommuneChangeEvent event) {
+        if (event.getType() == CommuneChangeEvent.Type.SAVED) {
+            put(event.getCommune());
+        } else if (event.getType() == CommuneChangeEvent.Type.DELETED) {
+            remove(event.getCodeInsee());
+        } else {
+            init();
+        }
+    }
+
+    /**
+     * Récupère une liste des communes dans un périmètre autour d'une commune. Les cellules couvertes
+     * par le périmètre sont parcourues avec un pré-filtre équirectangulaire, puis la distance exacte
+     * n'est calculée qu'une fois par candidat avant le tri.
+     *
+     * @param commune       La commune sur laquelle porte la recherche
+     * @param perimetreEnKm Le périmètre de recherche en kilomètre
+     * @return La liste des communes triées de la plus proche à la plus lointaine
+     */
+    public List<CommuneProche> findCommunesProches(Commune commune, double perimetreEnKm) {
+        lock.readLock().lock();
+        try {
+            long[] candidats = candidatsTries(commune, perimetreEnKm);
+            List<CommuneProche> communesProches = new ArrayList<>(candidats.length);
+            for (long candidat : candidats) {
+                communesProches.add(new CommuneProche(communes[(int) candidat], Math.round(distance(candidat))));
+            }
+            return communesProches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Comme {@link #findCommunesProches(Commune, double)}, avec les distances exactes dans des tableaux primitifs
+     */
+    NeighborList findNeighbors(Commune commune, double perimetreEnKm) {
+        lock.readLock().lock();
+        try {
+            long[] candidats = candidatsTries(commune, perimetreEnKm);
+            NeighborList voisines = new NeighborList(candidats.length);
+            for (int i = 0; i < candidats.length; i++) {
+                voisines.communes[i] = communes[(int) candidats[i]];
+                voisines.distances[i] = distance(candidats[i]);
+            }
+            return voisines;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return La commune indexée sous ce code INSEE, ou null
+     */
+    public Commune get(String codeInsee) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slotsParCodeInsee.get(codeInsee);
+            return slot == null ? null : communes[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Une copie de la liste des communes indexées
+     */
+    public List<Commune> communes() {
+        lock.readLock().lock();
+        try {
+            List<Commune> communesIndexees = new ArrayList<>(nbCommunes);
+            for (int slot = 0; slot < nbSlots; slot++) {
+                if (communes[slot] != null) {
+                    communesIndexees.add(communes[slot]);
+                }
+            }
+            return communesIndexees;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Candidats triés par distance croissante, chacun réunissant sa distance et son slot dans un long.
+     * A appeler sous le verrou de lecture.
+     */
+    private long[] candidatsTries(Commune commune, double perimetreEnKm) {
+        double latitude = commune.getLatitude();
+        double longitude = commune.getLongitude();
+        double lat = Math.toRadians(latitude);
+        double lng = Math.toRadians(longitude);
+        double cosLat = Math.cos(lat);
+        //Les distances affichées sont arrondies au kilomètre : une commune à 10,4 km est dans un périmètre de 10 km
+        double distanceMax = perimetreEnKm + 0.5;
+        double distanceMaxPreFiltre = distanceMax * 1.01;
+        double distanceMaxPreFiltre2 = distanceMaxPreFiltre * distanceMaxPreFiltre;
+        double degreLat = distanceMaxPreFiltre / GeoUtils.DEGRE_LAT_KM;
+        double degreLong = distanceMaxPreFiltre / (GeoUtils.DEGRE_LAT_KM * Math.max(cosLat, 0.01));
+
+        int nbCandidats = 0;
+        long[] candidats = new long[16];
+        for (long x = indiceCellule(latitude - degreLat); x <= indiceCellule(latitude + degreLat); x++) {
+            for (long y = indiceCellule(longitude - degreLong); y <= indiceCellule(longitude + degreLong); y++) {
+                SlotList cellule = cellules.get(cle(x, y));
+                if (cellule == null) {
+                    continue;
+                }
+                for (int i = 0; i < cellule.size; i++) {
+                    int slot = cellule.slots[i];
+                    if (GeoUtils.equirectangulaireKm2(lat, lng, latitudesRad[slot], longitudesRad[slot], cosLat) > distanceMaxPreFiltre2) {
+                        continue;
+                    }
+                    double distance = GeoUtils.haversineKm(lat, cosLat, lng, latitudesRad[slot], cosLatitudes[slot], longitudesRad[slot]);
+                    if (distance >= distanceMax || communes[slot].getNom().equals(commune.getNom())) {
+                        continue;
+                    }
+                    if (nbCandidats == candidats.length) {
+                        candidats = Arrays.copyOf(candidats, nbCandidats * 2);
+                    }
+                    //Une distance positive en float conserve l'ordre de ses bits : on trie distance et slot en un seul long
+                    candidats[nbCandidats++] = ((long) Float.floatToIntBits((float) distance) << 32) | slot;
+                }
+            }
+        }
+        Arrays.sort(candidats, 0, nbCandidats);
+        return Arrays.copyOf(candidats, nbCandidats);
+    }
+
+    private static float distance(long candidat) {
+        return Float.intBitsToFloat((int) (candidat >>> 32));
+    }
+
+    private void doPut(Commune commune) {
+        if (commune.getLatitude() == null || commune.getLongitude() == null) {
+            doRemove(commune.getCodeInsee());
+            return;
+        }
+        Integer slot = slotsParCodeInsee.get(commune.getCodeInsee());
+        if (slot == null) {
+            slot = nouveauSlot();
+            slotsParCodeInsee.put(commune.getCodeInsee(), slot);
+        } else if (communes[slot] != null) {
+            retirerDeSaCellule(slot);
+            nbCommunes--;
+        }
+        latitudes[slot] = commune.getLatitude();
+        longitudes[slot] = commune.getLongitude();
+        latitudesRad[slot] = Math.toRadians(latitudes[slot]);
+        longitudesRad[slot] = Math.toRadians(longitudes[slot]);
+        cosLatitudes[slot] = Math.cos(latitudesRad[slot]);
+        communes[slot] = commune;
+        cellules.computeIfAbsent(cle(indiceCellule(latitudes[slot]), indiceCellule(longitudes[slot])), k -> new SlotList()).add(slot);
+        nbCommunes++;
+    }
+
+    private void doRemove(String codeInsee) {
+        Integer slot = slotsParCodeInsee.get(codeInsee);
+        if (slot != null && communes[slot] != null) {
+            retirerDeSaCellule(slot);
+            communes[slot] = null;
+            nbCommunes--;
+        }
+    }
+
+    private int nouveauSlot() {
+        if (nbSlots == communes.length) {
+            int capacite = Math.max(16, communes.length * 2);
+            latitudes = Arrays.copyOf(latitudes, capacite);
+            longitudes = Arrays.copyOf(longitudes, capacite);
+            latitudesRad = Arrays.copyOf(latitudesRad, capacite);
+            longitudesRad = Arrays.copyOf(longitudesRad, capacite);
+            cosLatitudes = Arrays.copyOf(cosLatitudes, capacite);
+            communes = Arrays.copyOf(communes, capacite);
+        }
+        return nbSlots++;
+    }
+
+    private void retirerDeSaCellule(int slot) {
+        long cle = cle(indiceCellule(latitudes[slot]), indiceCellule(longitudes[slot]));
+        SlotList cellule = cellules.get(cle);
+        if (cellule != null && cellule.remove(slot) && cellule.size == 0) {
+            cellules.remove(cle);
+        }
+    }
+
+    private static long indiceCellule(double coordonnee) {
+        return (long) Math.floor(coordonnee / TAILLE_CELLULE);
+    }
+
+    private static long cle(long x, long y) {
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
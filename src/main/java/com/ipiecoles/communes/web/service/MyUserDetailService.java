@@ -6,7 +6,9 @@ import com.ipiecoles.communes.web.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -15,11 +17,14 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Service
-public class MyUserDetailService implements UserDetailsService {
+public class MyUserDetailService implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserCache userCache;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = userRepository.findByUserName(username);
@@ -31,6 +36,22 @@ public class MyUserDetailService implements UserDetailsService {
         return buildSpringUserFromMyUser(user);
     }
 
+    /**
+     * Enregistre le mot de passe ré-encodé lors d'une connexion, lorsque le coût BCrypt configuré a changé
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByUserName(userDetails.getUsername());
+        if (user == null) {
+            throw new UsernameNotFoundException("Aucun utilisateur nommé " + userDetails.getUsername() + " n'a été trouvé !");
+        }
+        user.setPassword(newPassword);
+        userRepository.save(user);
+        //L'entrée en cache contient encore l'ancien mot de passe encodé
+        userCache.removeUserFromCache(user.getUserName());
+        return buildSpringUserFromMyUser(user);
+    }
+
     private UserDetails buildSpringUserFromMyUser(User user) {
         Set<GrantedAuthority> authorities = new HashSet<>();
         for (Role role : user.getRoles()) {
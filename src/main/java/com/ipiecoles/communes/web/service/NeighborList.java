@@ -0,0 +1,18 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.model.Commune;
+
+/**
+ * Voisines d'une commune, de la plus proche à la plus lointaine, avec leur distance exacte en kilomètres
+ */
+final class NeighborList {
+
+    final Commune[] communes;
+
+    final float[] distances;
+
+    NeighborList(int taille) {
+        this.communes = new Commune[taille];
+        this.distances = new float[taille];
+    }
+}
@@ -0,0 +1,30 @@
+package com.ipiecoles.communes.web.service;
+
+import java.util.Arrays;
+
+/**
+ * Liste non ordonnée de slots (entiers) utilisée par les index en mémoire, sans boxing
+ */
+final class SlotList {
+
+    int[] slots = new int[8];
+
+    int size = 0;
+
+    void add(int slot) {
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        slots[size++] = slot;
+    }
+
+    boolean remove(int slot) {
+        for (int i = 0; i < size; i++) {
+            if (slots[i] == slot) {
+                slots[i] = slots[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+}
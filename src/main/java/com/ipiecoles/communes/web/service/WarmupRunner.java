@@ -0,0 +1,251 @@
+package com.ipiecoles.communes.web.service;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.security.WarmupAuthenticationFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.engine.TemplateModel;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Préchauffage d'une instance avant qu'elle ne reçoive du trafic, activé par communes.warmup.enabled=true (profil
+ * beanstalk). Des requêtes HTTP sont envoyées au serveur embarqué, sur les vraies données : pages de la liste,
+ * recherche par nom, détail d'une commune avec ses communes proches, page d'erreur, pages de connexion et
+ * d'inscription et connexion refusée. Le JIT, l'analyse des templates Thymeleaf, les plans de requêtes d'Hibernate,
+ * les pools de connexions et les caches (second niveau, fragments, nombre de communes) sont ainsi chauds. Le graphe
+ * des communes proches est construit avant les requêtes.
+ * <p>
+ * Les ApplicationRunner passent avant que Spring Boot n'accepte du trafic (ReadinessState.ACCEPTING_TRAFFIC) :
+ * /actuator/health/readiness répond 503 jusqu'à la fin du préchauffage, c'est l'URL à surveiller par le
+ * répartiteur de charge. La durée, le nombre de requêtes par parcours et les templates analysés sont écrits dans
+ * les logs ; la durée est aussi publiée dans la métrique communes.warmup.
+ */
+@Component
+public class WarmupRunner implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmupRunner.class);
+
+    private static final Pattern CSRF = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"");
+
+    private static final String[] TRIS = {"codeInsee", "nom", "codePostal"};
+
+    /**
+     * Chaque connexion refusée coûte un calcul BCrypt
+     */
+    private static final int NB_CONNEXIONS = 2;
+
+    @Value("${communes.warmup.enabled:false}")
+    private boolean actif;
+
+    @Value("${communes.warmup.iterations:20}")
+    private int iterations;
+
+    @Value("${communes.warmup.timeout:60s}")
+    private Duration dureeMax;
+
+    @Value("${server.servlet.context-path:}")
+    private String contextPath;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @Autowired
+    private CommuneNeighborGraph communeNeighborGraph;
+
+    @Autowired
+    private SpringTemplateEngine templateEngine;
+
+    @Autowired
+    private WarmupAuthenticationFilter warmupAuthenticationFilter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!actif || args.containsOption(CommuneImportRunner.OPTION_IMPORT)) {
+            return;
+        }
+        if (!(applicationContext instanceof WebServerApplicationContext)) {
+            LOGGER.info("Préchauffage ignoré : pas de serveur web");
+            return;
+        }
+        long debut = System.nanoTime();
+        long fin = debut + dureeMax.toNanos();
+
+        communeNeighborGraph.rebuild();
+        List<Commune> communes = communeRepository.findAll(PageRequest.of(0, iterations, Sort.by("codeInsee"))).getContent();
+
+        String base = "http://localhost:" + ((WebServerApplicationContext) applicationContext).getWebServer().getPort() + contextPath;
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .cookieHandler(new CookieManager()).connectTimeout(Duration.ofSeconds(5)).build();
+        Map<String, Parcours> parcours = new LinkedHashMap<>();
+        String jeton = warmupAuthenticationFilter.ouvrir();
+        try {
+            for (int i = 0; i < iterations && System.nanoTime() < fin; i++) {
+                appeler(client, parcours, "liste", HttpRequest.newBuilder(URI.create(base + "/?page=" + i % 10
+                        + "&size=10&sortProperty=" + TRIS[i % TRIS.length] + "&sortDirection=ASC")), 200);
+                if (!communes.isEmpty()) {
+                    Commune commune = communes.get(i % communes.size());
+                    appeler(client, parcours, "recherche", HttpRequest.newBuilder(URI.create(base + "/?search="
+                            + encode(commune.getNom().substring(0, Math.min(4, commune.getNom().length()))))), 200);
+                    appeler(client, parcours, "détail", HttpRequest.newBuilder(URI.create(base + "/communes/" + commune.getCodeInsee()))
+                            .header(WarmupAuthenticationFilter.EN_TETE, jeton), 200);
+                }
+                if (i < NB_CONNEXIONS) {
+                    connexionRefusee(client, parcours, base);
+                    appeler(client, parcours, "inscription", HttpRequest.newBuilder(URI.create(base + "/register")), 200);
+                    appeler(client, parcours, "erreur", HttpRequest.newBuilder(URI.create(base + "/communes/00000"))
+                            .header(WarmupAuthenticationFilter.EN_TETE, jeton), 404);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            warmupAuthenticationFilter.fermer();
+        }
+
+        long duree = System.nanoTime() - debut;
+        Timer.builder("communes.warmup").description("Durée du préchauffage").register(meterRegistry)
+                .record(duree, TimeUnit.NANOSECONDS);
+        LOGGER.info("Préchauffage terminé en {} ms, {} ; {}", TimeUnit.NANOSECONDS.toMillis(duree),
+                parcours.values().stream().map(Parcours::toString).collect(Collectors.joining(", ")), couvertureTemplates());
+        parcours.values().stream().filter(p -> p.derniereErreur != null)
+                .forEach(p -> LOGGER.warn("Préchauffage, parcours {} : {}", p.nom, p.derniereErreur));
+    }
+
+    /**
+     * Page de connexion puis connexion refusée : recherche d'un utilisateur et calcul BCrypt
+     */
+    private void connexionRefusee(HttpClient client, Map<String, Parcours> parcours, String base) throws InterruptedException {
+        String page = appeler(client, parcours, "connexion", HttpRequest.newBuilder(URI.create(base + "/login")), 200);
+        Matcher csrf = CSRF.matcher(page == null ? "" : page);
+        if (!csrf.find()) {
+            parcours.get("connexion").derniereErreur = "jeton CSRF absent de la page de connexion";
+            return;
+        }
+        String formulaire = "username=warmup&password=" + encode(Long.toString(System.nanoTime(), 36))
+                + "&_csrf=" + encode(csrf.group(1));
+        appeler(client, parcours, "connexion", HttpRequest.newBuilder(URI.create(base + "/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(formulaire)), 302);
+    }
+
+    /**
+     * @return Le corps de la réponse, null en cas d'erreur
+     */
+    private String appeler(HttpClient client, Map<String, Parcours> parcours, String nom, HttpRequest.Builder requete,
+                           int statutAttendu) throws InterruptedException {
+        Parcours p = parcours.computeIfAbsent(nom, Parcours::new);
+        long debut = System.nanoTime();
+        try {
+            HttpResponse<String> reponse = client.send(requete.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+            if (reponse.statusCode() != statutAttendu) {
+                p.erreur(reponse.request().uri().getPath() + " : statut " + reponse.statusCode());
+                return null;
+            }
+            return reponse.body();
+        } catch (IOException e) {
+            p.erreur(e.toString());
+            return null;
+        } finally {
+            p.nb++;
+            p.nanos += System.nanoTime() - debut;
+        }
+    }
+
+    /**
+     * @return Le nombre de templates du répertoire templates présents dans le cache de Thymeleaf, et ceux qui manquent
+     */
+    private String couvertureTemplates() {
+        ICache<TemplateCacheKey, TemplateModel> cache = templateEngine.getCacheManager() == null ? null
+                : templateEngine.getCacheManager().getTemplateCache();
+        if (cache == null) {
+            return "cache des templates désactivé";
+        }
+        Set<String> templates = new TreeSet<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath:/templates/**/*.html")) {
+                String chemin = resource.getURL().getPath();
+                templates.add(chemin.substring(chemin.lastIndexOf("/templates/") + "/templates/".length(), chemin.length() - ".html".length()));
+            }
+        } catch (IOException e) {
+            return "templates introuvables : " + e;
+        }
+        Set<String> analyses = cache.keySet().stream().map(TemplateCacheKey::getTemplate).collect(Collectors.toSet());
+        Set<String> manquants = new TreeSet<>(templates);
+        manquants.removeAll(analyses);
+        return (templates.size() - manquants.size()) + "/" + templates.size() + " templates analysés"
+                + (manquants.isEmpty() ? "" : ", manquants : " + manquants);
+    }
+
+    private static String encode(String valeur) {
+        return URLEncoder.encode(valeur, StandardCharsets.UTF_8);
+    }
+
+    private static class Parcours {
+
+        private final String nom;
+
+        private int nb;
+
+        private int erreurs;
+
+        private long nanos;
+
+        private String derniereErreur;
+
+        private Parcours(String nom) {
+            this.nom = nom;
+        }
+
+        private void erreur(String message) {
+            erreurs++;
+            derniereErreur = message;
+        }
+
+        @Override
+        public String toString() {
+            return nom + " " + nb + " requêtes (" + erreurs + " en erreur, " + (nb == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos / nb))
+                    + " ms en moyenne)";
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.ipiecoles.communes.web.util;
+
+/**
+ * Calculs de distance sur des doubles primitifs. Les méthodes prenant des coordonnées en radians
+ * permettent de précalculer une fois pour toutes les radians et cosinus de chaque commune.
+ */
+public final class GeoUtils {
+
+    public static final double RAYON_TERRE_KM = 6371.009;
+
+    /**
+     * Nombre de kilomètres dans un degré de latitude
+     */
+    public static final double DEGRE_LAT_KM = Math.toRadians(1) * RAYON_TERRE_KM;
+
+    private GeoUtils() {
+    }
+
+    /**
+     * Distance du grand cercle (formule de haversine) entre deux points exprimés en degrés
+     *
+     * @return La distance en kilomètres
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double lat1 = Math.toRadians(latitude1);
+        double lat2 = Math.toRadians(latitude2);
+        return haversineKm(lat1, Math.cos(lat1), Math.toRadians(longitude1), lat2, Math.cos(lat2), Math.toRadians(longitude2));
+    }
+
+    /**
+     * Distance du grand cercle (formule de haversine) entre deux points exprimés en radians,
+     * avec le cosinus de leur latitude déjà calculé
+     *
+     * @return La distance en kilomètres
+     */
+    public static double haversineKm(double lat1, double cosLat1, double lng1, double lat2, double cosLat2, double lng2) {
+        double sinDemiDLat = Math.sin((lat2 - lat1) * 0.5);
+        double sinDemiDLng = Math.sin((lng2 - lng1) * 0.5);
+        double a = sinDemiDLat * sinDemiDLat + cosLat1 * cosLat2 * sinDemiDLng * sinDemiDLng;
+        return 2 * RAYON_TERRE_KM * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Carré de la distance selon l'approximation équirectangulaire, en kilomètres². Sans fonction
+     * trigonométrique, elle sert de pré-filtre avant {@link #haversineKm}. Sur quelques dizaines de
+     * kilomètres, l'écart avec la distance exacte reste inférieur à 0,1 %.
+     *
+     * @param cosLatMoyenne Cosinus de la latitude autour de laquelle porte la recherche
+     */
+    public static double equirectangulaireKm2(double lat1, double lng1, double lat2, double lng2, double cosLatMoyenne) {
+        double x = (lng2 - lng1) * cosLatMoyenne;
+        double y = lat2 - lat1;
+        return (x * x + y * y) * RAYON_TERRE_KM * RAYON_TERRE_KM;
+    }
+}
@@ -0,0 +1,37 @@
+-- Schéma tel que le créait spring.jpa.hibernate.ddl-auto=update, commun à MySQL et H2.
+-- Les bases existantes sont marquées en version 1 sans exécuter ce script (spring.flyway.baseline-on-migrate).
+create table commune (
+    code_insee varchar(5) not null,
+    code_postal varchar(5) not null,
+    latitude double precision not null,
+    longitude double precision not null,
+    nom varchar(255) not null,
+    primary key (code_insee)
+);
+
+create table role (
+    id integer not null auto_increment,
+    role varchar(255),
+    primary key (id)
+);
+
+create table user (
+    id integer not null auto_increment,
+    active bit,
+    email varchar(255),
+    last_name varchar(50),
+    name varchar(50),
+    password varchar(255),
+    user_name varchar(50) not null,
+    primary key (id)
+);
+
+create table user_role (
+    user_id integer not null,
+    role_id integer not null,
+    primary key (user_id, role_id)
+);
+
+alter table user add constraint uk_user_user_name unique (user_name);
+alter table user_role add constraint fk_user_role_role foreign key (role_id) references role (id);
+alter table user_role add constraint fk_user_role_user foreign key (user_id) references user (id);
@@ -0,0 +1,13 @@
+-- Index des colonnes de tri de la liste (pagination par curseur : colonne triée puis code INSEE)
+create index idx_commune_nom on commune (nom, code_insee);
+create index idx_commune_code_postal on commune (code_postal, code_insee);
+create index idx_commune_latitude on commune (latitude, code_insee);
+create index idx_commune_longitude on commune (longitude, code_insee);
+
+-- Recherche par rectangle de coordonnées (findByLatitudeBetweenAndLongitudeBetween)
+create index idx_commune_latitude_longitude on commune (latitude, longitude);
+
+-- Date de dernière modification, lue régulièrement par CommuneDataVersion. Absente des bases créées avant
+-- Flyway, marquées en version 1.
+alter table commune add column updated_at datetime;
+create index idx_commune_updated_at on commune (updated_at);
@@ -0,0 +1,9 @@
+-- Battement écrit régulièrement sur la base principale et relu sur les réplicas pour mesurer leur retard
+-- (voir ReplicaLagMonitor). L'heure est en millisecondes depuis l'époque, telle que l'écrit l'application.
+create table replication_heartbeat (
+    id integer not null,
+    beat_millis bigint not null,
+    primary key (id)
+);
+
+insert into replication_heartbeat (id, beat_millis) values (1, 0);
@@ -0,0 +1,6 @@
+-- Position de la commune en POINT(longitude latitude), calculée par MySQL à partir des coordonnées :
+-- ni Hibernate ni l'import en masse n'ont à la renseigner.
+-- MySQL 8 n'utilise un index spatial que sur une colonne déclarant son SRID. Le SRID 0 garde l'ordre
+-- longitude, latitude de POINT() et ST_Distance_Sphere le lit comme des degrés.
+alter table commune add column location point generated always as (point(longitude, latitude)) stored not null srid 0;
+create spatial index idx_commune_location on commune (location);
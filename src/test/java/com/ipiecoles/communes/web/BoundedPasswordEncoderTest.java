@@ -0,0 +1,69 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.security.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class BoundedPasswordEncoderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BoundedPasswordEncoder passwordEncoder;
+
+    @AfterEach
+    public void tearDown() {
+        passwordEncoder.shutdown();
+    }
+
+    @Test
+    public void testUpgradeEncodingQuandLeCoutAChange() {
+        //Given
+        passwordEncoder = new BoundedPasswordEncoder(5, 1, 10, Duration.ofSeconds(5), meterRegistry);
+        String ancienHash = new BCryptPasswordEncoder(4).encode("password123");
+
+        //When
+        boolean matches = passwordEncoder.matches("password123", ancienHash);
+        String nouveauHash = passwordEncoder.encode("password123");
+
+        //Then
+        Assertions.assertThat(matches).isTrue();
+        Assertions.assertThat(passwordEncoder.upgradeEncoding(ancienHash)).isTrue();
+        Assertions.assertThat(passwordEncoder.upgradeEncoding(nouveauHash)).isFalse();
+        Assertions.assertThat(meterRegistry.get("communes.password.hash").timers())
+                .allSatisfy(timer -> Assertions.assertThat(timer.count()).isEqualTo(1));
+    }
+
+    @Test
+    public void testRefusQuandLaFileEstPleine() {
+        //Given
+        passwordEncoder = new BoundedPasswordEncoder(12, 1, 1, Duration.ofSeconds(30), meterRegistry);
+
+        //When
+        List<CompletableFuture<String>> calculs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            calculs.add(CompletableFuture.supplyAsync(() -> passwordEncoder.encode("password123")));
+        }
+        long nbRefus = calculs.stream().filter(calcul -> {
+            try {
+                calcul.join();
+                return false;
+            } catch (CompletionException e) {
+                return e.getCause() instanceof AuthenticationServiceException;
+            }
+        }).count();
+
+        //Then
+        Assertions.assertThat(nbRefus).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.get("communes.password.rejected").counter().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,42 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.security.CaffeineUserCache;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+
+public class CaffeineUserCacheTest {
+
+    private final CaffeineUserCache userCache = new CaffeineUserCache(10, Duration.ofMinutes(5));
+
+    @Test
+    public void testMotDePasseConserveApresEffacement() {
+        //Given
+        User user = (User) User.withUsername("pjacquet").password("{bcrypt}hash").roles("USER").build();
+        userCache.putUserInCache(user);
+
+        //When
+        //Spring Security efface le mot de passe de l'utilisateur authentifié
+        user.eraseCredentials();
+        UserDetails userEnCache = userCache.getUserFromCache("pjacquet");
+
+        //Then
+        Assertions.assertThat(userEnCache.getPassword()).isEqualTo("{bcrypt}hash");
+        Assertions.assertThat(userEnCache.getAuthorities()).extracting("authority").containsExactly("ROLE_USER");
+    }
+
+    @Test
+    public void testRemoveUserFromCache() {
+        //Given
+        userCache.putUserInCache(User.withUsername("pjacquet").password("hash").roles("USER").build());
+
+        //When
+        userCache.removeUserFromCache("pjacquet");
+
+        //Then
+        Assertions.assertThat(userCache.getUserFromCache("pjacquet")).isNull();
+    }
+}
@@ -0,0 +1,73 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.HibernateCacheConfiguration;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(HibernateCacheConfiguration.class)
+//Chaque appel au repository a sa propre session, comme dans les contrôleurs
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CommuneCacheTest {
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        communeRepository.deleteAll();
+        communeRepository.saveAll(List.of(
+                new Commune("01011", "Apremont", "01100", 46.2054981558, 5.65781475272),
+                new Commune("01283", "Oyonnax", "01100", 46.2605435859, 5.63525615566)));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testFindByIdDepuisLeCache() {
+        //Given
+
+        //When
+        communeRepository.findById("01011");
+        communeRepository.findById("01011");
+
+        //Then
+        Assertions.assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(2);
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    public void testCacheDeRequeteInvalideParUneEcriture() {
+        //Given
+        communeRepository.findAllBy(PageRequest.of(0, 10));
+        communeRepository.findAllBy(PageRequest.of(0, 10));
+
+        //When
+        communeRepository.save(new Commune("01014", "Arbent", "01100", 46.2920417011, 5.67927015434));
+        List<Commune> communes = communeRepository.findAllBy(PageRequest.of(0, 10)).getContent();
+
+        //Then
+        Assertions.assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+        Assertions.assertThat(statistics.getQueryCacheMissCount()).isEqualTo(2);
+        Assertions.assertThat(communes).extracting(Commune::getNom).contains("Arbent");
+    }
+}
@@ -0,0 +1,61 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneChangeEvent;
+import com.ipiecoles.communes.web.service.CommuneCountService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class CommuneCountServiceTest {
+
+    private CommuneRepository communeRepository;
+
+    private CommuneCountService communeCountService;
+
+    @BeforeEach
+    public void setUp() {
+        communeRepository = Mockito.mock(CommuneRepository.class);
+        Mockito.when(communeRepository.countCommune()).thenReturn(100L);
+        communeCountService = new CommuneCountService();
+        ReflectionTestUtils.setField(communeCountService, "communeRepository", communeRepository);
+        communeCountService.rafraichir();
+    }
+
+    @Test
+    public void testCountMisAJourSansRequete() {
+        //Given
+        Commune commune = new Commune("01011", "Apremont", "01100", 46.2054981558, 5.65781475272);
+
+        //When
+        long avant = communeCountService.count();
+        communeCountService.onCommuneChange(CommuneChangeEvent.saved(commune, true));
+        long apresCreation = communeCountService.count();
+        communeCountService.onCommuneChange(CommuneChangeEvent.saved(commune, false));
+        long apresModification = communeCountService.count();
+        communeCountService.onCommuneChange(CommuneChangeEvent.deleted("01011"));
+        long apresSuppression = communeCountService.count();
+
+        //Then
+        Assertions.assertThat(avant).isEqualTo(100);
+        Assertions.assertThat(apresCreation).isEqualTo(101);
+        Assertions.assertThat(apresModification).isEqualTo(101);
+        Assertions.assertThat(apresSuppression).isEqualTo(100);
+        Mockito.verify(communeRepository, Mockito.times(1)).countCommune();
+    }
+
+    @Test
+    public void testRecompteApresImport() {
+        //Given
+        Mockito.when(communeRepository.countCommune()).thenReturn(35000L);
+
+        //When
+        communeCountService.onCommuneChange(CommuneChangeEvent.reloaded());
+
+        //Then
+        Assertions.assertThat(communeCountService.count()).isEqualTo(35000);
+    }
+}
@@ -0,0 +1,78 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.HibernateCacheConfiguration;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneExportService;
+import com.ipiecoles.communes.web.service.CommuneSearchIndex;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import({CommuneExportService.class, CommuneSearchIndex.class, HibernateCacheConfiguration.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+//Le curseur JDBC doit voir les communes enregistrées par le test
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CommuneExportServiceTest {
+
+    @Autowired
+    private CommuneExportService communeExportService;
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @Autowired
+    private CommuneSearchIndex communeSearchIndex;
+
+    @BeforeEach
+    public void setUp() {
+        communeRepository.deleteAll();
+        communeRepository.saveAll(List.of(
+                new Commune("01283", "Oyonnax", "01100", 46.2605435859, 5.63525615566),
+                new Commune("01011", "Apremont", "01100", 46.2054981558, 5.65781475272),
+                new Commune("01014", "Arbent", "01100", 46.2920417011, 5.67927015434)));
+        communeSearchIndex.init();
+    }
+
+    @Test
+    public void testExportCsvTableComplete() throws IOException {
+        //Given
+        ByteArrayOutputStream flux = new ByteArrayOutputStream();
+
+        //When
+        communeExportService.exporter("", CommuneExportService.Format.CSV, flux);
+
+        //Then
+        Assertions.assertThat(flux.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "codeInsee,nom,codePostal,latitude,longitude\n" +
+                "01011,Apremont,01100,46.2054981558,5.65781475272\n" +
+                "01014,Arbent,01100,46.2920417011,5.67927015434\n" +
+                "01283,Oyonnax,01100,46.2605435859,5.63525615566\n");
+    }
+
+    @Test
+    public void testExportNdjsonRecherche() throws IOException {
+        //Given
+        ByteArrayOutputStream flux = new ByteArrayOutputStream();
+
+        //When
+        communeExportService.exporter("ar", CommuneExportService.Format.NDJSON, flux);
+
+        //Then
+        Assertions.assertThat(flux.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"codeInsee\":\"01014\",\"nom\":\"Arbent\",\"codePostal\":\"01100\",\"latitude\":46.2920417011,\"longitude\":5.67927015434}\n");
+    }
+}
@@ -0,0 +1,123 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.HibernateCacheConfiguration;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneImportReport;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneImportService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@DataJpaTest(properties = {"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "communes.import.batch-size=2"})
+@Import({CommuneImportService.class, HibernateCacheConfiguration.class})
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, ValidationAutoConfiguration.class})
+//Chaque lot est enregistré dans sa propre transaction
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CommuneImportServiceTest {
+
+    @Autowired
+    private CommuneImportService communeImportService;
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @BeforeEach
+    public void setUp() {
+        communeRepository.deleteAll();
+        communeRepository.save(new Commune("01011", "Apremont", "01100", 46.2, 5.6));
+    }
+
+    @Test
+    public void testImportCsvBaseCodesPostaux() throws IOException {
+        //Given
+        String csv = "Code_commune_INSEE;Nom_commune;Code_postal;Ligne_5;Libellé_d_acheminement;coordonnees_gps\n" +
+                "01011;APREMONT;01100;;APREMONT;46.2054981558, 5.65781475272\n" +
+                "01283;OYONNAX;01100;;OYONNAX;46.2605435859, 5.63525615566\n" +
+                "01014;ARBENT;01100;;ARBENT;\n" +
+                "01053;\"BOURG EN BRESSE\";01000;;BOURG;46.2051520382, 5.24602125501\n" +
+                "1053;BOURG;01000;;BOURG;abc, 5.2\n";
+
+        //When
+        CommuneImportReport rapport = communeImportService.importer(flux(csv), CommuneImportService.Format.CSV);
+
+        //Then
+        Assertions.assertThat(rapport.getLignesLues()).isEqualTo(5);
+        Assertions.assertThat(rapport.getCommunesEnregistrees()).isEqualTo(3);
+        Assertions.assertThat(rapport.getErreurs()).extracting(CommuneImportReport.Erreur::getLigne).containsExactly(4L, 6L);
+        Assertions.assertThat(rapport.getErreurs().get(1).getMessage()).isEqualTo("Nombre invalide : abc");
+        Assertions.assertThat(communeRepository.count()).isEqualTo(3);
+        Assertions.assertThat(communeRepository.findById("01011")).get()
+                .extracting(Commune::getNom, Commune::getLatitude).containsExactly("APREMONT", 46.2054981558);
+        Assertions.assertThat(communeRepository.findById("01053")).get()
+                .extracting(Commune::getNom).isEqualTo("BOURG EN BRESSE");
+    }
+
+    @Test
+    public void testImportJsonParLigne() throws IOException {
+        //Given
+        String json = "{\"codeInsee\": \"01283\", \"nom\": \"Oyonnax\", \"codePostal\": \"01100\", \"latitude\": 46.26, \"longitude\": 5.63}\n" +
+                "{\"codeInsee\": \"01014\", \"nom\": \"Arbent\", \"codePostal\": \"01100\", \"latitude\": \"nord\", \"longitude\": 5.67}\n" +
+                "{\"codeInsee\": \"01015\", \"nom\": \"Arbignieu\", \"codePostal\": \"1300\", \"latitude\": 45.72, \"longitude\": 5.65}\n" +
+                "{\"codeInsee\": \"01011\", \"nom\": \"Apremont\", \"codePostal\": \"01100\", \"latitude\": 46.21, \"longitude\": 5.66}\n";
+
+        //When
+        CommuneImportReport rapport = communeImportService.importer(flux(json), CommuneImportService.Format.JSON);
+
+        //Then
+        Assertions.assertThat(rapport.getLignesLues()).isEqualTo(4);
+        Assertions.assertThat(rapport.getCommunesEnregistrees()).isEqualTo(2);
+        Assertions.assertThat(rapport.getErreurs()).extracting(CommuneImportReport.Erreur::getLigne).containsExactly(2L, 3L);
+        Assertions.assertThat(rapport.getErreurs().get(1).getMessage()).isEqualTo("codePostal : Le code postal doit contenir 5 chiffres");
+        Assertions.assertThat(communeRepository.findAll()).extracting(Commune::getCodeInsee).containsExactlyInAnyOrder("01011", "01283");
+        Assertions.assertThat(communeRepository.findById("01011")).get().extracting(Commune::getLatitude).isEqualTo(46.21);
+    }
+
+    @Test
+    public void testImportTableauJson() throws IOException {
+        //Given
+        String json = "[\n" +
+                "  {\"codeInsee\": \"01283\", \"nom\": \"Oyonnax\", \"codePostal\": \"01100\", \"latitude\": 46.26, \"longitude\": 5.63},\n" +
+                "  {\"codeInsee\": \"01014\", \"nom\": \"Arbent\", \"codePostal\": \"01100\", \"latitude\": 46.29, \"longitude\": 5.67}\n" +
+                "]";
+
+        //When
+        CommuneImportReport rapport = communeImportService.importer(flux(json), CommuneImportService.Format.JSON);
+
+        //Then
+        Assertions.assertThat(rapport.getCommunesEnregistrees()).isEqualTo(2);
+        Assertions.assertThat(communeRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    public void testImportCsvEnteteIncomplet() {
+        //Given
+        String csv = "codeInsee,nom\n01283,Oyonnax\n";
+
+        //When
+        Throwable erreur = Assertions.catchThrowable(() -> communeImportService.importer(flux(csv), CommuneImportService.Format.CSV));
+
+        //Then
+        Assertions.assertThat(erreur).isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThat(communeRepository.count()).isEqualTo(1);
+    }
+
+    private static InputStream flux(String contenu) {
+        return new ByteArrayInputStream(contenu.getBytes(StandardCharsets.UTF_8));
+    }
+}
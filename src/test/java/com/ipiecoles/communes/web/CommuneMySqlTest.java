@@ -0,0 +1,141 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.HibernateCacheConfiguration;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.util.GeoUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Migrations, recherche par distance et plans d'exécution sur un vrai MySQL, ignorés sans Docker
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(HibernateCacheConfiguration.class)
+//ANALYZE TABLE valide la transaction en cours : les communes sont supprimées après chaque test
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CommuneMySqlTest {
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static final Commune EVREUX = new Commune("27229", "Evreux", "27000", 49.0200450429, 1.14164412404);
+    private static final Commune GUICHAINVILLE = new Commune("27306", "Guichainville", "27930", 48.9866, 1.1980);
+    private static final Commune GRAVIGNY = new Commune("27299", "Gravigny", "27930", 49.0541, 1.1665);
+    private static final Commune VERNON = new Commune("27681", "Vernon", "27200", 49.0920, 1.4851);
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+    }
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        communeRepository.saveAll(List.of(EVREUX, GUICHAINVILLE, GRAVIGNY, VERNON));
+        //Assez de communes, loin d'Évreux, pour que l'optimiseur préfère les index à un parcours de la table
+        List<Object[]> communes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            communes.add(new Object[]{String.format("%05d", 40000 + i), "Commune " + (i * 7919 % 2000),
+                    String.format("%05d", i % 900 * 100), 42 + (i % 40) * 0.1, -1 + (i % 50) * 0.1});
+        }
+        jdbcTemplate.batchUpdate("insert into commune (code_insee, nom, code_postal, latitude, longitude) values (?, ?, ?, ?, ?)", communes);
+        jdbcTemplate.execute("analyze table commune");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from commune");
+    }
+
+    @Test
+    public void testFindWithinDistance() {
+        //Given
+
+        //When
+        List<Commune> communes = communeRepository.findWithinDistance(EVREUX.getLatitude(), EVREUX.getLongitude(), 10);
+
+        //Then
+        Assertions.assertThat(communes).extracting(Commune::getCodeInsee).containsExactly("27229", "27299", "27306");
+        Assertions.assertThat(GeoUtils.distanceKm(EVREUX.getLatitude(), EVREUX.getLongitude(), VERNON.getLatitude(), VERNON.getLongitude()))
+                .isGreaterThan(10);
+    }
+
+    @Test
+    public void testPlanFindWithinDistance() {
+        //Given
+        String sql = "select code_insee from commune where MBRContains(ST_Envelope(LineString(Point(1.0, 48.9), Point(1.3, 49.1))), location)" +
+                " and ST_Distance_Sphere(location, Point(1.14, 49.02)) <= 10000";
+
+        //When
+        Map<String, Object> plan = explain(sql);
+
+        //Then
+        Assertions.assertThat(plan).containsEntry("key", "idx_commune_location").doesNotContainEntry("type", "ALL");
+    }
+
+    @ParameterizedTest
+    @CsvSource({"nom, idx_commune_nom", "code_postal, idx_commune_code_postal", "latitude, idx_commune_latitude", "longitude, idx_commune_longitude"})
+    public void testPlanPageTriee(String colonne, String index) {
+        //Given
+        String sql = "select * from commune order by " + colonne + ", code_insee limit 10";
+
+        //When
+        Map<String, Object> plan = explain(sql);
+
+        //Then
+        Assertions.assertThat(plan).containsEntry("key", index).doesNotContainEntry("type", "ALL");
+    }
+
+    @Test
+    public void testPlanRectangle() {
+        //Given
+        String sql = "select * from commune where latitude between 48.9 and 49.1 and longitude between 1.0 and 1.3";
+
+        //When
+        Map<String, Object> plan = explain(sql);
+
+        //Then
+        Assertions.assertThat(plan).doesNotContainEntry("type", "ALL");
+        Assertions.assertThat(plan.get("key")).asString().startsWith("idx_commune_latitude");
+    }
+
+    private Map<String, Object> explain(String sql) {
+        List<Map<String, Object>> lignes = jdbcTemplate.queryForList("explain " + sql);
+        Assertions.assertThat(lignes).hasSize(1);
+        //Les noms de colonnes de EXPLAIN varient en casse selon le pilote
+        return lignes.get(0).entrySet().stream()
+                .filter(e -> e.getValue() != null)
+                .collect(Collectors.toMap(e -> e.getKey().toLowerCase(), Map.Entry::getValue));
+    }
+}
@@ -0,0 +1,86 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneProche;
+import com.ipiecoles.communes.web.service.CommuneChangeEvent;
+import com.ipiecoles.communes.web.service.CommuneNeighborGraph;
+import com.ipiecoles.communes.web.service.CommuneSpatialIndex;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+public class CommuneNeighborGraphTest {
+
+    private static final Commune APREMONT = new Commune("01011", "Apremont", "01100", 46.2054981558, 5.65781475272);
+    private static final Commune OYONNAX = new Commune("01283", "Oyonnax", "01100", 46.2605435859, 5.63525615566);
+    private static final Commune ARBENT = new Commune("01014", "Arbent", "01100", 46.2920417011, 5.67927015434);
+    private static final Commune BOURG = new Commune("01053", "Bourg-en-Bresse", "01000", 46.2051520382, 5.24602125501);
+
+    private CommuneSpatialIndex index;
+
+    private CommuneNeighborGraph graph;
+
+    @BeforeEach
+    public void setUp() {
+        index = new CommuneSpatialIndex();
+        index.load(List.of(APREMONT, OYONNAX, ARBENT, BOURG));
+        graph = new CommuneNeighborGraph();
+        ReflectionTestUtils.setField(graph, "communeSpatialIndex", index);
+        graph.rebuild();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        graph.shutdown();
+    }
+
+    @Test
+    public void testFindCommunesProchesIdentiqueIndexSpatial() {
+        //Given
+
+        //When
+        List<CommuneProche> perimetre20 = graph.findCommunesProches(APREMONT, 20);
+        List<CommuneProche> perimetre7 = graph.findCommunesProches(APREMONT, 7);
+
+        //Then
+        Assertions.assertThat(graph.isReady()).isTrue();
+        Assertions.assertThat(perimetre20).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(index.findCommunesProches(APREMONT, 20));
+        Assertions.assertThat(perimetre7).extracting(CommuneProche::getCommune).containsExactly(OYONNAX);
+    }
+
+    @Test
+    public void testVoisinagesMisAJourApresDeplacement() {
+        //Given
+        Commune arbentDeplacee = new Commune("01014", "Arbent", "01100", 46.2, 5.24);
+        index.put(arbentDeplacee);
+
+        //When
+        graph.onCommuneChange(CommuneChangeEvent.saved(arbentDeplacee, false));
+
+        //Then
+        Assertions.assertThat(graph.findCommunesProches(APREMONT, 20)).extracting(CommuneProche::getCommune)
+                .containsExactly(OYONNAX);
+        Assertions.assertThat(graph.findCommunesProches(BOURG, 20)).extracting(CommuneProche::getCommune)
+                .containsExactly(arbentDeplacee);
+    }
+
+    @Test
+    public void testVoisinagesMisAJourApresSuppression() {
+        //Given
+        index.remove(OYONNAX.getCodeInsee());
+
+        //When
+        graph.onCommuneChange(CommuneChangeEvent.deleted(OYONNAX.getCodeInsee()));
+
+        //Then
+        Assertions.assertThat(graph.findCommunesProches(APREMONT, 20)).extracting(CommuneProche::getCommune)
+                .containsExactly(ARBENT);
+        Assertions.assertThat(graph.findCommunesProches(ARBENT, 20)).extracting(CommuneProche::getCommune)
+                .containsExactly(APREMONT);
+    }
+}
@@ -0,0 +1,54 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.controller.CommuneQueries;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneCountService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+public class CommuneQueriesTest {
+
+    private CommuneRepository communeRepository;
+
+    private CommuneQueries communeQueries;
+
+    @BeforeEach
+    public void setUp() {
+        communeRepository = Mockito.mock(CommuneRepository.class);
+        Mockito.when(communeRepository.countCommune()).thenReturn(100L);
+        CommuneCountService communeCountService = new CommuneCountService();
+        ReflectionTestUtils.setField(communeCountService, "communeRepository", communeRepository);
+        communeCountService.rafraichir();
+        communeQueries = new CommuneQueries();
+        ReflectionTestUtils.setField(communeQueries, "communeRepository", communeRepository);
+        ReflectionTestUtils.setField(communeQueries, "communeCountService", communeCountService);
+    }
+
+    @Test
+    public void testAppelsIdentiquesRegroupes() {
+        //Given
+        Commune commune = new Commune("01011", "Apremont", "01100", 46.2054981558, 5.65781475272);
+        Mockito.when(communeRepository.findById("01011")).thenReturn(Optional.of(commune));
+
+        //When
+        Commune premiere = communeQueries.findById("01011");
+        Commune seconde = communeQueries.findById("01011");
+        Commune inexistante = communeQueries.findById("99999");
+        communeQueries.findById("99999");
+        long total = communeQueries.count() + communeQueries.count();
+
+        //Then
+        Assertions.assertThat(premiere).isSameAs(commune).isSameAs(seconde);
+        Assertions.assertThat(inexistante).isNull();
+        Assertions.assertThat(total).isEqualTo(200);
+        Mockito.verify(communeRepository, Mockito.times(1)).findById("01011");
+        Mockito.verify(communeRepository, Mockito.times(1)).findById("99999");
+        Mockito.verify(communeRepository, Mockito.times(1)).countCommune();
+    }
+}
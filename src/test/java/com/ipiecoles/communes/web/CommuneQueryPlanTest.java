@@ -0,0 +1,119 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.HibernateCacheConfiguration;
+import com.ipiecoles.communes.web.repository.CommuneCursor;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import org.assertj.core.api.Assertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plans d'exécution, sur le schéma créé par les migrations, des requêtes faites à chaque affichage de la liste
+ * et par CommuneDataVersion : aucune ne doit parcourir toute la table.
+ */
+@DataJpaTest(properties = {"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.ipiecoles.communes.web.CommuneQueryPlanTest$RequetesExecutees"})
+@Import(HibernateCacheConfiguration.class)
+public class CommuneQueryPlanTest {
+
+    /**
+     * Garde le SQL des requêtes envoyées par Hibernate
+     */
+    public static class RequetesExecutees implements StatementInspector {
+
+        private static final List<String> requetes = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            requetes.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        //Assez de communes pour qu'un parcours complet de la table coûte plus que celui d'un index
+        List<Object[]> communes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            communes.add(new Object[]{String.format("%05d", i), "Commune " + (i * 7919 % 2000),
+                    String.format("%05d", i % 900 * 100), 42 + (i % 97) * 0.1, -4 + (i % 89) * 0.15});
+        }
+        jdbcTemplate.batchUpdate("insert into commune (code_insee, nom, code_postal, latitude, longitude) values (?, ?, ?, ?, ?)", communes);
+        RequetesExecutees.requetes.clear();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"nom, IDX_COMMUNE_NOM", "codePostal, IDX_COMMUNE_CODE_POSTAL", "latitude, IDX_COMMUNE_LATITUDE", "longitude, IDX_COMMUNE_LONGITUDE"})
+    public void testPlanPageTriee(String sortProperty, String index) {
+        //Given
+
+        //When
+        communeRepository.findAllBy(PageRequest.of(3, 10, Sort.Direction.ASC, sortProperty));
+
+        //Then
+        assertPlanUtilise(index);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"nom, ASC, false, Commune 10, IDX_COMMUNE_NOM", "codePostal, DESC, false, 01000, IDX_COMMUNE_CODE_POSTAL",
+            "latitude, ASC, true, 45.0, IDX_COMMUNE_LATITUDE", "longitude, DESC, true, 1.5, IDX_COMMUNE_LONGITUDE"})
+    public void testPlanPageParCurseur(String sortProperty, String sortDirection, boolean backward, String valeur, String index) {
+        //Given
+        CommuneCursor cursor = CommuneCursor.parse("00010:" + valeur);
+
+        //When
+        communeRepository.findSlice(sortProperty, Sort.Direction.fromString(sortDirection), cursor, backward, 10);
+
+        //Then
+        assertPlanUtilise(index);
+    }
+
+    @Test
+    public void testPlanRectangle() {
+        //Given
+
+        //When
+        communeRepository.findByLatitudeBetweenAndLongitudeBetween(45.0, 45.5, 1.0, 2.0);
+
+        //Then
+        assertPlanUtilise("IDX_COMMUNE_LATITUDE_LONGITUDE");
+    }
+
+    @Test
+    public void testPlanDerniereModification() {
+        //Given
+
+        //When
+        communeRepository.findMaxUpdatedAt();
+
+        //Then
+        assertPlanUtilise("IDX_COMMUNE_UPDATED_AT");
+    }
+
+    /**
+     * Vérifie le plan de l'unique requête exécutée depuis le début du test, les paramètres restant non renseignés
+     */
+    private void assertPlanUtilise(String index) {
+        Assertions.assertThat(RequetesExecutees.requetes).hasSize(1);
+        String plan = jdbcTemplate.queryForObject("explain " + RequetesExecutees.requetes.get(0), String.class);
+        Assertions.assertThat(plan).contains("/* PUBLIC." + index).doesNotContain("tableScan");
+    }
+}
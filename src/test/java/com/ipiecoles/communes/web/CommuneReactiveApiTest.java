@@ -0,0 +1,98 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.controller.CommuneReactiveApiController;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneProche;
+import com.ipiecoles.communes.web.repository.CommuneReactiveRepository;
+import com.ipiecoles.communes.web.service.CommuneNeighborGraph;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+/**
+ * Lectures R2DBC de l'API réactive sur une base H2
+ */
+@DataR2dbcTest(properties = {"spring.r2dbc.url=r2dbc:h2:mem:///reactive;DB_CLOSE_DELAY=-1", "spring.r2dbc.username=sa", "spring.r2dbc.password="})
+public class CommuneReactiveApiTest {
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private CommuneReactiveRepository communeReactiveRepository;
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CommuneReactiveApiController controller;
+
+    @BeforeEach
+    public void setUp() {
+        databaseClient.sql("drop table if exists commune").then()
+                .then(databaseClient.sql("create table commune (code_insee varchar(5) primary key, nom varchar(255), code_postal varchar(5), " +
+                        "latitude double, longitude double, updated_at timestamp)").then())
+                .then(databaseClient.sql("insert into commune (code_insee, nom, code_postal, latitude, longitude) values " +
+                        "('27229', 'Evreux', '27000', 49.0200450429, 1.14164412404), ('27306', 'Guichainville', '27930', 48.9866, 1.1980), " +
+                        "('27299', 'Gravigny', '27930', 49.0541, 1.1665), ('27681', 'Vernon', '27200', 49.0920, 1.4851), " +
+                        "('27375', 'Le Vieil-Evreux', '27930', 49.0011, 1.2186)").then())
+                .block();
+        controller = new CommuneReactiveApiController();
+        ReflectionTestUtils.setField(controller, "communeReactiveRepository", communeReactiveRepository);
+        ReflectionTestUtils.setField(controller, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(controller, "tailleMax", 100);
+    }
+
+    @Test
+    public void testListeCommunesTriee() {
+        //Given
+
+        //When
+        List<Commune> communes = controller.listeCommunes(1, 2, "codePostal", "ASC", "").collectList().block();
+
+        //Then
+        Assertions.assertThat(communes).extracting(Commune::getCodeInsee).containsExactly("27299", "27306");
+    }
+
+    @Test
+    public void testListeCommunesRecherche() {
+        //Given
+
+        //When
+        List<Commune> communes = controller.listeCommunes(0, 10, "nom", "DESC", "evreux").collectList().block();
+
+        //Then
+        Assertions.assertThat(communes).extracting(Commune::getNom).containsExactly("Le Vieil-Evreux", "Evreux");
+    }
+
+    @Test
+    public void testGetCommuneInexistante() {
+        //Given
+
+        //When
+        HttpStatus status = controller.getCommune("99999").block().getStatusCode();
+
+        //Then
+        Assertions.assertThat(status).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void testGetCommunesProches() {
+        //Given
+
+        //When
+        List<CommuneProche> communesProches = controller.getCommunesProches("27229", 10).collectList().block();
+
+        //Then
+        Assertions.assertThat(communesProches).extracting(c -> c.getCommune().getCodeInsee()).containsExactly("27299", "27306", "27375");
+        Assertions.assertThat(communesProches).extracting(CommuneProche::getDistance).isSorted().allMatch(d -> d <= 10);
+        Assertions.assertThat(meterRegistry.get(CommuneNeighborGraph.COMMUNES_PROCHES_METRIQUE).tag("source", "api")
+                .counter().count()).isEqualTo(3);
+    }
+}
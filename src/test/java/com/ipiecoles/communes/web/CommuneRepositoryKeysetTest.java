@@ -0,0 +1,68 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneCursor;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+public class CommuneRepositoryKeysetTest {
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @BeforeEach
+    public void setUp() {
+        //Des noms et coordonnées en double pour vérifier le départage par code INSEE
+        communeRepository.saveAll(List.of(
+                new Commune("01001", "Apremont", "01100", 46.2, 5.6),
+                new Commune("01002", "Arbent", "01100", 46.3, 5.6),
+                new Commune("01003", "Apremont", "01200", 46.1, 5.5),
+                new Commune("01004", "Bourg", "01000", 46.2, 5.2),
+                new Commune("01005", "Oyonnax", "01100", 46.3, 5.6),
+                new Commune("2A004", "Ajaccio", "20000", 41.9, 8.7),
+                new Commune("01006", "Belley", "01300", 45.8, 5.7)));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"codeInsee, ASC", "nom, ASC", "nom, DESC", "codePostal, ASC", "latitude, DESC", "longitude, ASC"})
+    public void testParcoursAvantPuisArriere(String sortProperty, String sortDirection) {
+        //Given
+        Sort.Direction direction = Sort.Direction.fromString(sortDirection);
+        List<String> attendu = communeRepository.findAll(Sort.by(direction, sortProperty).and(Sort.by(direction, "codeInsee")))
+                .stream().map(Commune::getCodeInsee).collect(Collectors.toList());
+
+        //When
+        List<String> avant = new ArrayList<>();
+        List<Slice<Commune>> pages = new ArrayList<>();
+        CommuneCursor cursor = null;
+        Slice<Commune> slice;
+        do {
+            slice = communeRepository.findSlice(sortProperty, direction, cursor, false, 3);
+            pages.add(slice);
+            slice.forEach(c -> avant.add(c.getCodeInsee()));
+            cursor = slice.hasContent() ? CommuneCursor.of(slice.getContent().get(slice.getNumberOfElements() - 1), sortProperty) : null;
+        } while (slice.hasNext());
+
+        Commune premiereDeLaDernierePage = pages.get(pages.size() - 1).getContent().get(0);
+        Slice<Commune> precedente = communeRepository.findSlice(sortProperty, direction,
+                CommuneCursor.parse(CommuneCursor.of(premiereDeLaDernierePage, sortProperty).toString()), true, 3);
+
+        //Then
+        Assertions.assertThat(avant).containsExactlyElementsOf(attendu);
+        Assertions.assertThat(pages).hasSize(3);
+        Assertions.assertThat(precedente.getContent()).containsExactlyElementsOf(pages.get(1).getContent());
+        Assertions.assertThat(precedente.hasNext()).isTrue();
+    }
+}
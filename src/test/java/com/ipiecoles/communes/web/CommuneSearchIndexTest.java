@@ -0,0 +1,103 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.service.CommuneChangeEvent;
+import com.ipiecoles.communes.web.service.CommuneSearchIndex;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class CommuneSearchIndexTest {
+
+    private static final Commune EVREUX = new Commune("27229", "Évreux", "27000", 49.0200450429, 1.14164412404);
+    private static final Commune EVREUX_SAINT_MICHEL = new Commune("27999", "Saint-Michel-d'Évreux", "27000", 49.01, 1.15);
+    private static final Commune APREMONT = new Commune("01011", "Apremont", "01100", 46.2054981558, 5.65781475272);
+    private static final Commune LAMONTGIE = new Commune("63184", "Lamontgie", "63570", 45.4850597013, 3.32651566713);
+    private static final Commune MONTBRISON = new Commune("42147", "Montbrison", "42600", 45.6075133968, 4.06523640022);
+    private static final Commune MONT = new Commune("64396", "Mont", "64300", 43.4358880138, -0.651562030226);
+    private static final Commune SAINT_MONTAN = new Commune("07281", "Saint-Montan", "07220", 44.4480431735, 4.63722779048);
+
+    private CommuneSearchIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new CommuneSearchIndex();
+        index.load(List.of(EVREUX, EVREUX_SAINT_MICHEL, APREMONT, LAMONTGIE, MONTBRISON, MONT, SAINT_MONTAN));
+    }
+
+    @Test
+    public void testSearchSansAccentNiCasse() {
+        //Given
+
+        //When
+        List<Commune> communes = index.search("EVREUX");
+
+        //Then
+        Assertions.assertThat(communes).containsExactly(EVREUX, EVREUX_SAINT_MICHEL);
+    }
+
+    @Test
+    public void testSearchTrieeParPertinence() {
+        //Given
+
+        //When
+        List<Commune> communes = index.search("mont");
+
+        //Then
+        Assertions.assertThat(communes).containsExactly(MONT, MONTBRISON, SAINT_MONTAN, APREMONT, LAMONTGIE);
+    }
+
+    @Test
+    public void testSearchTexteCourt() {
+        //Given
+
+        //When
+        List<Commune> communes = index.search("d'é");
+
+        //Then
+        Assertions.assertThat(communes).containsExactly(EVREUX_SAINT_MICHEL);
+    }
+
+    @Test
+    public void testSearchMiseAJourApresModification() {
+        //Given
+        Commune renommee = new Commune("01011", "Apremont-la-Forêt", "01100", 46.2054981558, 5.65781475272);
+
+        //When
+        index.onCommuneChange(CommuneChangeEvent.saved(renommee, false));
+        index.onCommuneChange(CommuneChangeEvent.deleted("42147"));
+
+        //Then
+        Assertions.assertThat(index.search("foret")).containsExactly(renommee);
+        Assertions.assertThat(index.search("mont")).containsExactly(MONT, SAINT_MONTAN, renommee, LAMONTGIE);
+        Assertions.assertThat(index.size()).isEqualTo(6);
+    }
+
+    @Test
+    public void testSuggestParPrefixeDeCode() {
+        //Given
+        long echeance = System.nanoTime() + 1_000_000_000L;
+
+        //When
+        List<Commune> parCodeInsee = index.suggest("272", 10, echeance);
+        List<Commune> parCodePostal = index.suggest("0", 3, echeance);
+
+        //Then
+        Assertions.assertThat(parCodeInsee).containsExactly(EVREUX);
+        Assertions.assertThat(parCodePostal).containsExactly(APREMONT, SAINT_MONTAN);
+    }
+
+    @Test
+    public void testSuggestMeilleursNoms() {
+        //Given
+        long echeance = System.nanoTime() + 1_000_000_000L;
+
+        //When
+        List<Commune> communes = index.suggest("Mont", 3, echeance);
+
+        //Then
+        Assertions.assertThat(communes).containsExactly(MONT, MONTBRISON, SAINT_MONTAN);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.CommuneProche;
+import com.ipiecoles.communes.web.service.CommuneSpatialIndex;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class CommuneSpatialIndexTest {
+
+    private static final Commune APREMONT = new Commune("01011", "Apremont", "01100", 46.2054981558, 5.65781475272);
+    private static final Commune OYONNAX = new Commune("01283", "Oyonnax", "01100", 46.2605435859, 5.63525615566);
+    private static final Commune ARBENT = new Commune("01014", "Arbent", "01100", 46.2920417011, 5.67927015434);
+    private static final Commune BOURG = new Commune("01053", "Bourg-en-Bresse", "01000", 46.2051520382, 5.24602125501);
+
+    private CommuneSpatialIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new CommuneSpatialIndex();
+        index.load(List.of(APREMONT, OYONNAX, ARBENT, BOURG));
+    }
+
+    @Test
+    public void testFindCommunesProchesTrieesParDistance() {
+        //Given
+
+        //When
+        List<CommuneProche> communesProches = index.findCommunesProches(APREMONT, 20);
+
+        //Then
+        Assertions.assertThat(communesProches).extracting(CommuneProche::getCommune).containsExactly(OYONNAX, ARBENT);
+        Assertions.assertThat(communesProches).extracting(CommuneProche::getDistance)
+                .containsExactly(OYONNAX.getDistance(APREMONT.getLatitude(), APREMONT.getLongitude()),
+                        ARBENT.getDistance(APREMONT.getLatitude(), APREMONT.getLongitude()));
+    }
+
+    @Test
+    public void testFindCommunesProchesPerimetreReduit() {
+        //Given
+
+        //When
+        List<CommuneProche> communesProches = index.findCommunesProches(APREMONT, 7);
+
+        //Then
+        Assertions.assertThat(communesProches).extracting(CommuneProche::getCommune).containsExactly(OYONNAX);
+    }
+
+    @Test
+    public void testRemove() {
+        //Given
+        index.remove(OYONNAX.getCodeInsee());
+
+        //When
+        List<CommuneProche> communesProches = index.findCommunesProches(APREMONT, 20);
+
+        //Then
+        Assertions.assertThat(communesProches).extracting(CommuneProche::getCommune).containsExactly(ARBENT);
+        Assertions.assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testPutMiseAJourCoordonnees() {
+        //Given
+        Commune arbentDeplacee = new Commune("01014", "Arbent", "01100", 46.2, 5.24);
+        index.put(arbentDeplacee);
+
+        //When
+        List<CommuneProche> prochesApremont = index.findCommunesProches(APREMONT, 20);
+        List<CommuneProche> prochesBourg = index.findCommunesProches(BOURG, 20);
+
+        //Then
+        Assertions.assertThat(prochesApremont).extracting(CommuneProche::getCommune).containsExactly(OYONNAX);
+        Assertions.assertThat(prochesBourg).extracting(CommuneProche::getCommune).containsExactly(arbentDeplacee);
+        Assertions.assertThat(index.size()).isEqualTo(4);
+    }
+}
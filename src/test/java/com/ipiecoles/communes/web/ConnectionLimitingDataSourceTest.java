@@ -0,0 +1,60 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.ConnectionLimitingDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+/**
+ * Limitation du nombre de connexions ouvertes en même temps
+ */
+public class ConnectionLimitingDataSourceTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ConnectionLimitingDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() {
+        dataSource = new ConnectionLimitingDataSource(new DriverManagerDataSource("jdbc:h2:mem:limite", "sa", ""),
+                1, Duration.ofMillis(50), meterRegistry);
+    }
+
+    @Test
+    public void testAttenteDepassee() throws Exception {
+        //Given
+        try (Connection connexion = dataSource.getConnection()) {
+
+            //When
+            Throwable exception = Assertions.catchThrowable(() -> dataSource.getConnection());
+
+            //Then
+            Assertions.assertThat(exception).isInstanceOf(SQLTransientConnectionException.class);
+            Assertions.assertThat(connexion.isValid(1)).isTrue();
+        }
+    }
+
+    @Test
+    public void testAutorisationRendueUneSeuleFois() throws Exception {
+        //Given
+        Connection connexion = dataSource.getConnection();
+        Assertions.assertThat(meterRegistry.get("communes.jdbc.permits.available").gauge().value()).isZero();
+
+        //When
+        connexion.close();
+        connexion.close();
+
+        //Then
+        Assertions.assertThat(meterRegistry.get("communes.jdbc.permits.available").gauge().value()).isEqualTo(1);
+        try (Connection suivante = dataSource.getConnection()) {
+            Assertions.assertThat(suivante.isClosed()).isFalse();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.HibernateCacheConfiguration;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.List;
+
+/**
+ * Mise à jour d'une base créée avant Flyway par ddl-auto=update : elle est marquée en version 1, les migrations
+ * suivantes s'y appliquent et Hibernate valide le schéma obtenu au démarrage.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(HibernateCacheConfiguration.class)
+public class FlywayBaselineTest {
+
+    private static final String URL = "jdbc:h2:mem:baseline;DB_CLOSE_DELAY=-1";
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        //Schéma existant, créé avant le démarrage de l'application
+        new ResourceDatabasePopulator(new ClassPathResource("db/baseline/schema_ddl_auto.sql"))
+                .execute(new DriverManagerDataSource(URL, "sa", ""));
+        registry.add("spring.datasource.url", () -> URL);
+        registry.add("spring.datasource.username", () -> "sa");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testMigrationDepuisLaBaseExistante() {
+        //Given
+
+        //When
+        List<String> versions = jdbcTemplate.queryForList("select concat(\"type\", ' ', \"version\")"
+                + " from \"flyway_schema_history\" where \"version\" is not null order by \"installed_rank\"", String.class);
+        Commune evreux = communeRepository.findById("27229").orElseThrow();
+        evreux.setLatitude(49.02);
+        communeRepository.saveAndFlush(evreux);
+
+        //Then
+        Assertions.assertThat(versions).containsExactly("BASELINE 1", "SQL 2", "SQL 3", "SQL 4");
+        Assertions.assertThat(communeRepository.findMaxUpdatedAt()).isNotNull();
+        Assertions.assertThat(jdbcTemplate.queryForObject("select count(*) from information_schema.indexes"
+                + " where index_name = 'IDX_COMMUNE_UPDATED_AT'", Integer.class)).isPositive();
+    }
+}
@@ -0,0 +1,103 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.controller.FragmentCache;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneChangeEvent;
+import com.ipiecoles.communes.web.service.CommuneDataVersion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.ui.ModelMap;
+import org.springframework.util.unit.DataSize;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FragmentCacheTest {
+
+    private static final String TEMPLATE = "<div><p>Entête</p><table th:fragment=\"tableCommunes\" th:text=\"${communes}\"></table></div>";
+
+    private final AtomicInteger nbRendus = new AtomicInteger();
+
+    private CommuneRepository communeRepository;
+
+    private CommuneDataVersion communeDataVersion;
+
+    private FragmentCache fragmentCache;
+
+    @BeforeEach
+    public void setUp() {
+        //Le nom du template est son contenu
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(new StringTemplateResolver());
+        communeRepository = Mockito.mock(CommuneRepository.class);
+        Mockito.when(communeRepository.countCommune()).thenReturn(2L);
+        communeDataVersion = new CommuneDataVersion();
+        ReflectionTestUtils.setField(communeDataVersion, "communeRepository", communeRepository);
+        communeDataVersion.rafraichir();
+        fragmentCache = new FragmentCache(DataSize.ofMegabytes(1), Duration.ofMinutes(10), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fragmentCache, "templateEngine", templateEngine);
+        ReflectionTestUtils.setField(fragmentCache, "applicationContext", new GenericApplicationContext());
+        ReflectionTestUtils.setField(fragmentCache, "communeDataVersion", communeDataVersion);
+    }
+
+    @Test
+    public void testRenderEnCache() {
+        //Given
+        String premier = render("0", "evreux");
+
+        //When
+        String second = render("0", "evreux");
+
+        //Then
+        Assertions.assertThat(second).isEqualTo(premier).isEqualTo("<table>page 0 evreux</table>");
+        Assertions.assertThat(nbRendus).hasValue(1);
+    }
+
+    @Test
+    public void testRenderParametresDifferents() {
+        //Given
+        render("0", "1|evreux");
+
+        //When
+        String autre = render("0|1", "evreux");
+
+        //Then
+        Assertions.assertThat(autre).isEqualTo("<table>page 0|1 evreux</table>");
+        Assertions.assertThat(nbRendus).hasValue(2);
+    }
+
+    @Test
+    public void testRenderApresModification() {
+        //Given
+        render("0", "evreux");
+
+        //When
+        communeDataVersion.onCommuneChange(CommuneChangeEvent.deleted("27229"));
+        fragmentCache.onCommuneChange(CommuneChangeEvent.deleted("27229"));
+        render("0", "evreux");
+        render("0", "evreux");
+
+        //Then
+        Assertions.assertThat(nbRendus).hasValue(2);
+        //La génération de la clé est lue sans requête
+        Mockito.verify(communeRepository, Mockito.times(1)).countCommune();
+    }
+
+    private String render(String page, String search) {
+        ModelMap model = new ModelMap();
+        return fragmentCache.render(TEMPLATE, "tableCommunes", model, new MockHttpServletRequest(),
+                new MockHttpServletResponse(), () -> {
+                    nbRendus.incrementAndGet();
+                    model.put("communes", "page " + page + " " + search);
+                }, page, search);
+    }
+}
@@ -0,0 +1,109 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.controller.PageETags;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.service.CommuneChangeEvent;
+import com.ipiecoles.communes.web.service.CommuneDataVersion;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+public class PageETagsTest {
+
+    private CommuneDataVersion communeDataVersion;
+
+    private CommuneRepository communeRepository;
+
+    private PageETags pageETags;
+
+    @BeforeEach
+    public void setUp() {
+        communeRepository = Mockito.mock(CommuneRepository.class);
+        Mockito.when(communeRepository.countCommune()).thenReturn(100L);
+        Mockito.when(communeRepository.findMaxUpdatedAt()).thenReturn(Instant.parse("2021-07-01T10:00:00Z"));
+        communeDataVersion = new CommuneDataVersion();
+        ReflectionTestUtils.setField(communeDataVersion, "communeRepository", communeRepository);
+        communeDataVersion.rafraichir();
+        pageETags = new PageETags();
+        ReflectionTestUtils.setField(pageETags, "communeDataVersion", communeDataVersion);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testPageNonModifiee() {
+        //Given
+        String etag = etag("/communes/01011");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/communes/01011");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //When
+        boolean nonModifiee = pageETags.checkNotModified(request, response);
+
+        //Then
+        Assertions.assertThat(nonModifiee).isTrue();
+        Assertions.assertThat(response.getStatus()).isEqualTo(304);
+        Assertions.assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("no-cache, private");
+    }
+
+    @Test
+    public void testETagChangeAvecLesDonneesEtLUtilisateur() {
+        //Given
+        String avant = etag("/communes/01011");
+
+        //When
+        String memePage = etag("/communes/01011");
+        String autrePage = etag("/communes/01283");
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "admin", null, AuthorityUtils.createAuthorityList("ROLE_ADMIN")));
+        String connecte = etag("/communes/01011");
+        communeDataVersion.onCommuneChange(CommuneChangeEvent.deleted("01283"));
+        String apresModification = etag("/communes/01011");
+
+        //Then
+        Assertions.assertThat(memePage).isEqualTo(avant);
+        Assertions.assertThat(List.of(avant, autrePage, connecte, apresModification)).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void testMemeGenerationSurToutesLesInstances() {
+        //Given
+        CommuneDataVersion autreInstance = new CommuneDataVersion();
+        ReflectionTestUtils.setField(autreInstance, "communeRepository", communeRepository);
+        autreInstance.rafraichir();
+
+        //When
+        communeDataVersion.onCommuneChange(CommuneChangeEvent.deleted("01283"));
+        String apresModificationLocale = communeDataVersion.getGeneration();
+        Mockito.when(communeRepository.countCommune()).thenReturn(99L);
+        communeDataVersion.rafraichir();
+        autreInstance.rafraichir();
+
+        //Then
+        Assertions.assertThat(apresModificationLocale).isNotEqualTo(autreInstance.getGeneration());
+        Assertions.assertThat(communeDataVersion.getGeneration()).isEqualTo(autreInstance.getGeneration())
+                .isNotEqualTo(apresModificationLocale);
+    }
+
+    private String etag(String uri) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        pageETags.checkNotModified(new MockHttpServletRequest("GET", uri), response);
+        return response.getHeader(HttpHeaders.ETAG);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.PageMetricsInterceptor;
+import com.ipiecoles.communes.web.config.StatementCounter;
+import com.ipiecoles.communes.web.controller.IndexController;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.ui.ModelMap;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class PageMetricsInterceptorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PageMetricsInterceptor interceptor;
+
+    private HandlerMethod handler;
+
+    @BeforeEach
+    public void setUp() throws NoSuchMethodException {
+        meterRegistry = new SimpleMeterRegistry();
+        interceptor = new PageMetricsInterceptor(new StatementCounter(), meterRegistry, 5);
+        handler = new HandlerMethod(new IndexController(), IndexController.class.getMethod("listeCommunes",
+                Integer.class, Integer.class, String.class, String.class, String.class, Boolean.class, String.class,
+                String.class, Boolean.class, ModelMap.class,
+                HttpServletRequest.class, HttpServletResponse.class));
+    }
+
+    @Test
+    public void testControleurEtRenduMesuresSeparement() {
+        //Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //When
+        interceptor.preHandle(request, response, handler);
+        interceptor.postHandle(request, response, handler, new ModelAndView("main"));
+        interceptor.afterCompletion(request, response, handler, null);
+
+        //Then
+        Assertions.assertThat(meterRegistry.get("communes.controller").tag("handler", "IndexController.listeCommunes")
+                .tag("exception", "none").timer().count()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.get("communes.view.render").tag("view", "main").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRedirectionEtExceptionSansRendu() {
+        //Given
+        MockHttpServletRequest redirection = new MockHttpServletRequest("GET", "/");
+        MockHttpServletRequest erreur = new MockHttpServletRequest("GET", "/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //When
+        interceptor.preHandle(redirection, response, handler);
+        interceptor.postHandle(redirection, response, handler, new ModelAndView("redirect:/communes/01011"));
+        interceptor.afterCompletion(redirection, response, handler, null);
+        interceptor.preHandle(erreur, response, handler);
+        interceptor.afterCompletion(erreur, response, handler, new IllegalArgumentException());
+
+        //Then
+        Assertions.assertThat(meterRegistry.find("communes.view.render").timers()).isEmpty();
+        Assertions.assertThat(meterRegistry.get("communes.controller").tag("exception", "IllegalArgumentException")
+                .timer().count()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.get("communes.controller").timers())
+                .extracting(t -> t.count()).containsOnly(1L);
+    }
+}
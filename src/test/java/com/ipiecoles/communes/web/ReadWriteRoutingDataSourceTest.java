@@ -0,0 +1,126 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.ReadWriteRoutingDataSource;
+import com.ipiecoles.communes.web.config.ReplicaLagMonitor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Routage des transactions entre la base principale et un réplica, selon le retard mesuré de ce dernier
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private JdbcTemplate primaire;
+
+    private JdbcTemplate replica;
+
+    private ReplicaLagMonitor replicaLagMonitor;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        primaire = base("primaire");
+        replica = base("replica");
+        replicaLagMonitor = new ReplicaLagMonitor(primaire.getDataSource(), Map.of("replica-1", replica.getDataSource()),
+                Duration.ofSeconds(5), Duration.ofSeconds(1), meterRegistry);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(
+                new ReadWriteRoutingDataSource(primaire.getDataSource(), replicaLagMonitor, meterRegistry));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        replicaLagMonitor.close();
+        primaire.execute("drop all objects");
+        replica.execute("drop all objects");
+    }
+
+    @Test
+    public void testEcritureSurPrincipale() {
+        //Given
+        replicaAJour();
+        //LazyConnectionDataSourceProxy ouvre une connexion à sa création pour lire les réglages par défaut
+        double ecritures = compteur("primary", "write");
+
+        //When
+        String nom = transactionTemplate.execute(status -> jdbcTemplate.queryForObject("select nom from base", String.class));
+
+        //Then
+        Assertions.assertThat(nom).isEqualTo("primaire");
+        Assertions.assertThat(compteur("primary", "write")).isEqualTo(ecritures + 1);
+    }
+
+    @Test
+    public void testLectureSurReplicaAJour() {
+        //Given
+        replicaAJour();
+        transactionTemplate.setReadOnly(true);
+
+        //When
+        String nom = transactionTemplate.execute(status -> jdbcTemplate.queryForObject("select nom from base", String.class));
+
+        //Then
+        Assertions.assertThat(nom).isEqualTo("replica");
+        Assertions.assertThat(replicaLagMonitor.getReplicas().get(0).getRetardMs()).isZero();
+        Assertions.assertThat(compteur("replica-1", "read")).isEqualTo(1);
+    }
+
+    @Test
+    public void testLectureSurPrincipaleSiReplicaEnRetard() {
+        //Given
+        replica.update("update replication_heartbeat set beat_millis = ?", System.currentTimeMillis() - 60_000);
+        replicaLagMonitor.verifier();
+        replicaLagMonitor.verifier();
+        transactionTemplate.setReadOnly(true);
+
+        //When
+        String nom = transactionTemplate.execute(status -> jdbcTemplate.queryForObject("select nom from base", String.class));
+
+        //Then
+        Assertions.assertThat(nom).isEqualTo("primaire");
+        Assertions.assertThat(replicaLagMonitor.getReplicas().get(0).getRetardMs()).isGreaterThanOrEqualTo(60_000);
+        Assertions.assertThat(compteur("primary", "fallback")).isEqualTo(1);
+    }
+
+    /**
+     * Simule la réplication du battement écrit sur la base principale
+     */
+    private void replicaAJour() {
+        replicaLagMonitor.verifier();
+        Long battement = primaire.queryForObject("select beat_millis from replication_heartbeat", Long.class);
+        replica.update("update replication_heartbeat set beat_millis = ?", battement);
+        replicaLagMonitor.verifier();
+    }
+
+    private double compteur(String route, String raison) {
+        return meterRegistry.get("communes.datasource.route").tag("route", route).tag("reason", raison).counter().count();
+    }
+
+    private static JdbcTemplate base(String nom) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + nom + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("create table replication_heartbeat (id integer primary key, beat_millis bigint not null)");
+        jdbcTemplate.execute("insert into replication_heartbeat (id, beat_millis) values (1, 0)");
+        jdbcTemplate.execute("create table base (nom varchar(20))");
+        jdbcTemplate.update("insert into base (nom) values (?)", nom);
+        return jdbcTemplate;
+    }
+}
@@ -0,0 +1,31 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.StartupConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+
+public class StartupReportTest {
+
+    @Test
+    public void testRapportParEtape() {
+        //Given
+        BufferingApplicationStartup startup = new BufferingApplicationStartup(100);
+        StartupStep refresh = startup.start("spring.context.refresh");
+        startup.start("spring.beans.instantiate").tag("beanName", "communeSpatialIndex").end();
+        startup.start("spring.beans.instantiate").tag("beanName", "communeController").end();
+        refresh.end();
+        startup.start("spring.boot.application.started").end();
+
+        //When
+        String rapport = StartupConfiguration.rapport(startup.getBufferedTimeline(), 1234);
+
+        //Then
+        Assertions.assertThat(rapport).startsWith("Application prête 1234 ms")
+                .containsSubsequence("spring.context.refresh : ", "spring.boot.application.started : ",
+                        "Beans les plus longs à créer :")
+                .contains("communeSpatialIndex : ", "communeController : ")
+                .doesNotContain("  spring.beans.instantiate");
+    }
+}
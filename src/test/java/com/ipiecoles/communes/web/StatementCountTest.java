@@ -0,0 +1,126 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.StatementCounter;
+import com.ipiecoles.communes.web.model.Commune;
+import com.ipiecoles.communes.web.model.Role;
+import com.ipiecoles.communes.web.model.User;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.repository.RoleRepository;
+import com.ipiecoles.communes.web.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Nombre de requêtes SQL des pages, sur une base H2 : une régression qui multiplie les requêtes fait échouer
+ * ces tests
+ */
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:statements;DB_CLOSE_DELAY=-1", "spring.datasource.username=sa",
+        "spring.datasource.password=", "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.r2dbc.url=r2dbc:h2:mem:///statements;DB_CLOSE_DELAY=-1", "spring.r2dbc.username=sa", "spring.r2dbc.password=",
+        "communes.sql.repeated-threshold=2"})
+@AutoConfigureMockMvc
+public class StatementCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        communeRepository.saveAll(List.of(new Commune("01011", "Apremont", "01100", 46.2054981558, 5.65781475272),
+                new Commune("01014", "Arbent", "01100", 46.2920417011, 5.67927015434)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        communeRepository.deleteAll();
+        userRepository.deleteAll();
+        roleRepository.deleteAll();
+    }
+
+    @Test
+    public void testDetailCommune() throws Exception {
+        //Given
+        //Première page : remplissage des caches
+        mockMvc.perform(get("/communes/01014").with(user("user").roles("USER")))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        DistributionSummary requetesPage = meterRegistry.get("communes.page.db.statements")
+                .tag("uri", "/communes/{codeInsee}").summary();
+        long pagesAvant = requetesPage.count();
+        double requetesAvant = requetesPage.totalAmount();
+        double repeteesAvant = total("communes.db.repeated.statements");
+        double lentesAvant = total("communes.db.slow.statements");
+
+        //When
+        mockMvc.perform(get("/communes/01011").with(user("user").roles("USER")))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        //Then
+        Assertions.assertThat(requetesPage.count()).isEqualTo(pagesAvant + 1);
+        Assertions.assertThat(requetesPage.totalAmount() - requetesAvant).isLessThanOrEqualTo(2);
+        Assertions.assertThat(total("communes.db.repeated.statements")).isEqualTo(repeteesAvant);
+        Assertions.assertThat(total("communes.db.slow.statements")).isEqualTo(lentesAvant);
+        //Rien n'est plus attribué à la page une fois la requête terminée
+        Assertions.assertThat(statementCounter.getOrigine()).isNull();
+        Assertions.assertThat(statementCounter.getNbRequetes()).isZero();
+    }
+
+    @Test
+    public void testRolesChargesUnParUn() {
+        //Given
+        Role role = roleRepository.save(new Role(null, "ROLE_USER"));
+        for (int i = 0; i < 5; i++) {
+            userRepository.save(new User(null, "user" + i, "user" + i + "@test.fr", "motdepasse", "Nom", "Prénom", true, Set.of(role)));
+        }
+        statementCounter.reinitialiser("test");
+
+        //When
+        Set<String> roles = transactionTemplate.execute(status -> userRepository.findAll().stream()
+                .flatMap(u -> u.getRoles().stream()).map(Role::getRole).collect(Collectors.toSet()));
+
+        //Then
+        Assertions.assertThat(roles).containsExactly("ROLE_USER");
+        Assertions.assertThat(statementCounter.getRequetesRepetees(5)).hasSize(1)
+                .allSatisfy((sql, nb) -> Assertions.assertThat(sql).contains("user_role"));
+    }
+
+    private double total(String metrique) {
+        return meterRegistry.find(metrique).counters().stream().mapToDouble(Counter::count).sum();
+    }
+}
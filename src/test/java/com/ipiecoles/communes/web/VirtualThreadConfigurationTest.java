@@ -0,0 +1,77 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.config.ConnectionLimitingDataSource;
+import com.ipiecoles.communes.web.config.VirtualThreadConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Mode communes.threads.virtual=true : threads virtuels à partir de Java 21, échec explicite du démarrage avant
+ */
+public class VirtualThreadConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withPropertyValues("communes.threads.virtual=true", "communes.jdbc.max-concurrent=3")
+            .withBean("dataSource", DataSource.class, () -> new DriverManagerDataSource("jdbc:h2:mem:virtuel", "sa", ""))
+            .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+            .withUserConfiguration(VirtualThreadConfiguration.class);
+
+    @Test
+    public void testDemarrageSelonLaVersionDeJava() {
+        contextRunner.run(context -> {
+            if (Runtime.version().feature() >= 21) {
+                //Requêtes sur des threads virtuels, connexions limitées
+                Assertions.assertThat(context).hasNotFailed();
+                Boolean virtuel = context.getBean(ExecutorService.class)
+                        .submit(() -> (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())).get();
+                Assertions.assertThat(virtuel).isTrue();
+                Assertions.assertThat(context.getBean("dataSource")).isInstanceOf(ConnectionLimitingDataSource.class);
+            } else {
+                //Pas de retour silencieux au pool de threads de Tomcat
+                Assertions.assertThat(context).hasFailed();
+                Assertions.assertThat(context.getStartupFailure()).hasRootCauseInstanceOf(NoSuchMethodException.class)
+                        .hasMessageContaining("communes.threads.virtual=true demande Java 21 ou plus");
+            }
+        });
+    }
+
+    @Test
+    public void testSansLaPropriete() {
+        contextRunner.withPropertyValues("communes.threads.virtual=false").run(context -> {
+            Assertions.assertThat(context).hasNotFailed().doesNotHaveBean(ExecutorService.class);
+            Assertions.assertThat(context.getBean("dataSource")).isInstanceOf(DriverManagerDataSource.class);
+        });
+    }
+
+    @Test
+    public void testSourceDeDonneesLimitee() throws Exception {
+        //Given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        BeanPostProcessor postProcessor = VirtualThreadConfiguration.connectionLimitingPostProcessor(
+                new MockEnvironment().withProperty("spring.datasource.hikari.maximum-pool-size", "4"),
+                beanFactory.getBeanProvider(MeterRegistry.class));
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:virtuel", "sa", "");
+
+        //When
+        Object principale = postProcessor.postProcessAfterInitialization(dataSource, "dataSource");
+        Object autre = postProcessor.postProcessAfterInitialization(dataSource, "replicaDataSource");
+
+        //Then
+        Assertions.assertThat(principale).isInstanceOf(ConnectionLimitingDataSource.class);
+        Assertions.assertThat(autre).isSameAs(dataSource);
+        //Autant d'autorisations que de connexions du pool Hikari, à défaut de communes.jdbc.max-concurrent
+        Assertions.assertThat(meterRegistry.get("communes.jdbc.permits.available").gauge().value()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,68 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.security.WarmupAuthenticationFilter;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class WarmupAuthenticationFilterTest {
+
+    private final WarmupAuthenticationFilter filter = new WarmupAuthenticationFilter();
+
+    private Authentication filtrer(MockHttpServletRequest request, String jeton) throws Exception {
+        AtomicReference<Authentication> authentification = new AtomicReference<>();
+        if (jeton != null) {
+            request.addHeader(WarmupAuthenticationFilter.EN_TETE, jeton);
+        }
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+                authentification.set(SecurityContextHolder.getContext().getAuthentication());
+                req.getSession();
+            }
+        }));
+        Assertions.assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        return authentification.get();
+    }
+
+    @Test
+    public void testJetonValide() throws Exception {
+        //Given
+        String jeton = filter.ouvrir();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/communes/01001");
+
+        //When
+        Authentication authentification = filtrer(request, jeton);
+
+        //Then
+        Assertions.assertThat(request.getSession(false)).isNull();
+        Assertions.assertThat(authentification).isNotNull();
+        Assertions.assertThat(authentification.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_USER");
+    }
+
+    @Test
+    public void testJetonInvalideOuFerme() throws Exception {
+        //Given
+        String jeton = filter.ouvrir();
+
+        //When
+        Authentication mauvaisJeton = filtrer(new MockHttpServletRequest("GET", "/communes/01001"), jeton + "x");
+        Authentication sansJeton = filtrer(new MockHttpServletRequest("GET", "/communes/01001"), null);
+        filter.fermer();
+        Authentication jetonFerme = filtrer(new MockHttpServletRequest("GET", "/communes/01001"), jeton);
+
+        //Then
+        Assertions.assertThat(mauvaisJeton).isNull();
+        Assertions.assertThat(sansJeton).isNull();
+        Assertions.assertThat(jetonFerme).isNull();
+    }
+}
@@ -0,0 +1,118 @@
+package com.ipiecoles.communes.web;
+
+import com.ipiecoles.communes.web.model.Role;
+import com.ipiecoles.communes.web.model.User;
+import com.ipiecoles.communes.web.repository.CommuneRepository;
+import com.ipiecoles.communes.web.repository.RoleRepository;
+import com.ipiecoles.communes.web.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import java.util.Set;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Règles d'accès des chaînes de Spring Security, sur une base H2
+ */
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:security;DB_CLOSE_DELAY=-1", "spring.datasource.username=sa",
+        "spring.datasource.password=", "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.r2dbc.url=r2dbc:h2:mem:///security;DB_CLOSE_DELAY=-1", "spring.r2dbc.username=sa", "spring.r2dbc.password="})
+@AutoConfigureMockMvc
+public class WebSecurityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @AfterEach
+    public void tearDown() {
+        communeRepository.deleteAll();
+        userRepository.deleteAll();
+        roleRepository.deleteAll();
+    }
+
+    @Test
+    public void testApiReactiveAnonyme() throws Exception {
+        //Given
+
+        //When
+        mockMvc.perform(get("/api/reactive/communes/01001/proches"))
+
+        //Then
+                .andExpect(MockMvcResultMatchers.status().is3xxRedirection())
+                .andExpect(MockMvcResultMatchers.redirectedUrlPattern("**/login"));
+    }
+
+    @Test
+    public void testHttpBasicReserveAActuator() throws Exception {
+        //Given
+        userRepository.save(new User(null, "admin", "admin@test.fr", passwordEncoder.encode("motdepasse"), "Nom",
+                "Prénom", true, Set.of(roleRepository.save(new Role(null, "ROLE_ADMIN")))));
+
+        //When
+        mockMvc.perform(get("/actuator/metrics").with(httpBasic("admin", "motdepasse")))
+
+        //Then
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.request().sessionAttributeDoesNotExist("SPRING_SECURITY_CONTEXT"));
+        mockMvc.perform(get("/communes/01001").with(httpBasic("admin", "motdepasse")))
+                .andExpect(MockMvcResultMatchers.status().is3xxRedirection())
+                .andExpect(MockMvcResultMatchers.redirectedUrlPattern("**/login"));
+        mockMvc.perform(get("/actuator/metrics"))
+                .andExpect(MockMvcResultMatchers.status().isUnauthorized());
+        mockMvc.perform(get("/actuator/health/readiness"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void testImportDemandeLeJetonCsrf() throws Exception {
+        //Given
+        String csv = "codeInsee,nom,codePostal,latitude,longitude\n01001,L'Abergement-Clémenciat,01400,46.15,4.92\n";
+
+        //When
+        mockMvc.perform(post("/api/communes/import").with(user("admin").roles("ADMIN"))
+                        .contentType("text/csv").content(csv))
+
+        //Then
+                .andExpect(MockMvcResultMatchers.status().isForbidden());
+        mockMvc.perform(post("/api/communes/import").with(user("admin").roles("ADMIN")).with(csrf().asHeader())
+                        .contentType("text/csv").content(csv))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(get("/api/communes/csrf").with(user("admin").roles("ADMIN")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.headerName").value("X-CSRF-TOKEN"));
+    }
+
+    @Test
+    public void testApiReactiveUtilisateur() throws Exception {
+        //Given
+
+        //When
+        mockMvc.perform(get("/api/reactive/communes/01001/proches").with(user("user").roles("USER")))
+
+        //Then
+                .andExpect(MockMvcResultMatchers.request().asyncStarted());
+    }
+}
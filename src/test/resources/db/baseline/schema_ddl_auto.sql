@@ -0,0 +1,39 @@
+-- Schéma créé par spring.jpa.hibernate.ddl-auto=update avec les entités d'avant Flyway, tel qu'il existe sur les
+-- bases en production : Flyway les marque en version 1 sans exécuter V1__schema_initial.sql.
+create table commune (
+    code_insee varchar(5) not null,
+    code_postal varchar(5) not null,
+    latitude double precision not null,
+    longitude double precision not null,
+    nom varchar(255) not null,
+    primary key (code_insee)
+);
+
+create table role (
+    id integer not null auto_increment,
+    role varchar(255),
+    primary key (id)
+);
+
+create table user (
+    id integer not null auto_increment,
+    active bit,
+    email varchar(255),
+    last_name varchar(50),
+    name varchar(50),
+    password varchar(255),
+    user_name varchar(50) not null,
+    primary key (id)
+);
+
+create table user_role (
+    user_id integer not null,
+    role_id integer not null,
+    primary key (user_id, role_id)
+);
+
+alter table user add constraint UK_lqjrcobrh9jc8wpcar64q1bfh unique (user_name);
+alter table user_role add constraint FKa68196081fvovjhkek5m97n3y foreign key (role_id) references role (id);
+alter table user_role add constraint FK859n2jvi8ivhui0rl0esws6o foreign key (user_id) references user (id);
+
+insert into commune (code_insee, code_postal, latitude, longitude, nom) values ('27229', '27000', 49.0200450429, 1.14164412404, 'Evreux');
@@ -0,0 +1,2 @@
+-- Pas de colonne spatiale sur H2 (il faudrait JTS) : la version 3 ne fait rien ici, pour que les deux bases
+-- suivent la même numérotation. findWithinDistance n'est disponible que sur MySQL.